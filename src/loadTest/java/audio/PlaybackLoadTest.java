@@ -0,0 +1,315 @@
+package audio;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.source.AudioSourceManagers;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.playback.NonAllocatingAudioFrameBuffer;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Headless load test of the playback path, without a Discord connection. For every guild count it creates that many
+ * {@link GuildMusicManager}s playing local audio files and asks their send handlers for a frame every 20 ms, each guild
+ * on its own thread like JDA's audio sending threads. After a warm up it measures for a while and prints one row:
+ *
+ * <ul>
+ *     <li>missed: frames that were due in the measured time but not sent</li>
+ *     <li>underruns and late: as counted by {@link FrameStatistics}</li>
+ *     <li>jitter: how long after its due time a frame was asked for, mean, 99th percentile and maximum</li>
+ *     <li>cpu: process CPU time as a percentage of one core, in total and per guild</li>
+ *     <li>alloc: bytes allocated per second, summed over the threads still alive at the end of the measurement</li>
+ *     <li>gc: collections and time spent collecting</li>
+ * </ul>
+ *
+ * Usage: {@code PlaybackLoadTest <audio file or folder> [guild counts, default 1,10,50,100] [seconds per step]},
+ * steps run for 30 seconds unless given. From gradle: {@code gradlew playbackLoadTest -PloadTestArgs="music 1,10,100"}
+ */
+public final class PlaybackLoadTest {
+
+    private static final long FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final long WARMUP_SECONDS = 5;
+
+    private PlaybackLoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: PlaybackLoadTest <audio file or folder> [guild counts] [seconds per step]");
+            System.exit(1);
+        }
+        List<String> files = audioFiles(Paths.get(args[0]));
+        String[] counts = (args.length > 1 ? args[1] : "1,10,50,100").split(",");
+        long seconds = args.length > 2 ? Long.parseLong(args[2]) : 30;
+
+        System.out.println(String.format("%d files, %d s per step after %d s warm up, %d cores",
+                files.size(), seconds, WARMUP_SECONDS, Runtime.getRuntime().availableProcessors()));
+        System.out.println(String.format("%7s %9s %8s %9s %6s %11s %10s %10s %7s %9s %10s %5s %7s",
+                "guilds", "frames", "missed", "underruns", "late", "jitter avg", "jitter p99", "jitter max",
+                "cpu %", "cpu/guild", "alloc MB/s", "gc", "gc ms"));
+        for (String count : counts) {
+            System.out.println(runStep(files, Integer.parseInt(count.trim()), seconds));
+        }
+    }
+
+    private static String runStep(List<String> files, int guilds, long seconds) throws Exception {
+
+        // Set up like AudioHandler's player manager, with only the local source
+        AudioPlayerManager playerManager = new DefaultAudioPlayerManager();
+        playerManager.getConfiguration().setFrameBufferFactory(NonAllocatingAudioFrameBuffer::new);
+        AudioSourceManagers.registerLocalSource(playerManager);
+
+        List<AudioTrack> tracks = load(playerManager, files);
+        if (tracks.isEmpty())
+            throw new IllegalArgumentException("None of the files could be loaded");
+
+        TrackCodec trackCodec = new TrackCodec(playerManager);
+        QueueStore queueStore = new QueueStore(null, trackCodec);
+        FrameStatistics statistics = new FrameStatistics();
+        Jitter jitter = new Jitter();
+
+        List<GuildMusicManager> managers = new ArrayList<>(guilds);
+        List<Thread> senders = new ArrayList<>(guilds);
+        for (int guild = 0; guild < guilds; guild++) {
+            GuildMusicManager manager = new GuildMusicManager(playerManager, statistics, queueStore, trackCodec, guild);
+            manager.scheduler.queueAll(playlist(tracks, guild, TimeUnit.SECONDS.toMillis(WARMUP_SECONDS + seconds)));
+            managers.add(manager);
+
+            Thread sender = new Thread(() -> send(manager.getSendHandler(), jitter), "load-guild-" + guild);
+            sender.setDaemon(true);
+            senders.add(sender);
+        }
+        senders.forEach(Thread::start);
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(WARMUP_SECONDS));
+        Snapshot before = new Snapshot(statistics);
+        jitter.recording = true;
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        jitter.recording = false;
+        Snapshot after = new Snapshot(statistics);
+
+        for (Thread sender : senders) {
+            sender.interrupt();
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        managers.forEach(GuildMusicManager::destroy);
+        queueStore.shutdown();
+        playerManager.shutdown();
+
+        double wallSeconds = (after.wallNanos - before.wallNanos) / 1e9;
+        long frames = after.frames - before.frames;
+        long expected = guilds * Math.round(wallSeconds * TimeUnit.SECONDS.toNanos(1) / FRAME_NANOS);
+        double cpu = 100.0 * (after.cpuNanos - before.cpuNanos) / (after.wallNanos - before.wallNanos);
+        return String.format("%7d %9d %8d %9d %6d %8.2f ms %7.2f ms %7.2f ms %7.1f %9.2f %10.1f %5d %7d",
+                guilds, frames, Math.max(0, expected - frames),
+                after.underruns - before.underruns, after.lateFrames - before.lateFrames,
+                jitter.meanMillis(), jitter.percentileMillis(0.99), jitter.maxMillis(),
+                cpu, cpu / guilds, after.allocatedSince(before) / wallSeconds / (1024 * 1024),
+                after.collections - before.collections, after.collectionMillis - before.collectionMillis);
+    }
+
+    /**
+     * Asks for a frame every 20 ms until interrupted. A sender that falls a whole frame behind continues from now
+     * rather than sending a burst to catch up.
+     */
+    private static void send(AudioPlayerSendHandler handler, Jitter jitter) {
+        long due = System.nanoTime();
+        while (!Thread.currentThread().isInterrupted()) {
+            due += FRAME_NANOS;
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            long lateness = System.nanoTime() - due;
+            jitter.record(lateness);
+
+            if (handler.canProvide())
+                handler.provide20MsAudio();
+
+            if (lateness > FRAME_NANOS)
+                due = System.nanoTime();
+        }
+    }
+
+    /**
+     * Clones of the tracks from an offset on, repeated until they play for at least the given time, so every guild
+     * keeps playing and switches tracks at its own moments.
+     */
+    private static List<AudioTrack> playlist(List<AudioTrack> tracks, int offset, long millis) {
+        List<AudioTrack> playlist = new ArrayList<>();
+        long duration = 0;
+        for (int i = offset; duration < millis; i++) {
+            AudioTrack track = tracks.get(i % tracks.size());
+            playlist.add(track.makeClone());
+            duration += track.getInfo().isStream ? millis : Math.max(track.getDuration(), 1000);
+        }
+        return playlist;
+    }
+
+    private static List<AudioTrack> load(AudioPlayerManager playerManager, List<String> files)
+            throws InterruptedException {
+        List<AudioTrack> tracks = Collections.synchronizedList(new ArrayList<>());
+        for (String file : files) {
+            try {
+                playerManager.loadItem(file, new AudioLoadResultHandler() {
+                    @Override
+                    public void trackLoaded(AudioTrack track) {
+                        tracks.add(track);
+                    }
+
+                    @Override
+                    public void playlistLoaded(AudioPlaylist playlist) {
+                        tracks.addAll(playlist.getTracks());
+                    }
+
+                    @Override
+                    public void noMatches() {
+                        System.err.println("Not an audio file: " + file);
+                    }
+
+                    @Override
+                    public void loadFailed(FriendlyException exception) {
+                        System.err.println("Could not load " + file + ": " + exception.getMessage());
+                    }
+                }).get();
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+            }
+        }
+        return tracks;
+    }
+
+    private static List<String> audioFiles(Path path) throws IOException {
+        List<String> files = new ArrayList<>();
+        if (!Files.isDirectory(path)) {
+            files.add(path.toAbsolutePath().toString());
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, Files::isRegularFile)) {
+            for (Path file : stream) {
+                files.add(file.toAbsolutePath().toString());
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * Histogram of frame lateness in buckets of 0.1 ms up to 100 ms, shared by all sender threads.
+     */
+    private static final class Jitter {
+
+        private static final long BUCKET_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+        private final AtomicLongArray buckets = new AtomicLongArray(1000);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private volatile boolean recording;
+
+        void record(long latenessNanos) {
+            if (!recording)
+                return;
+            long lateness = Math.max(0, latenessNanos);
+            buckets.incrementAndGet((int) Math.min(lateness / BUCKET_NANOS, buckets.length() - 1));
+            count.increment();
+            totalNanos.add(lateness);
+            maxNanos.accumulate(lateness);
+        }
+
+        double meanMillis() {
+            long frames = count.sum();
+            return frames == 0 ? 0 : totalNanos.sum() / 1e6 / frames;
+        }
+
+        double percentileMillis(double percentile) {
+            long target = (long) Math.ceil(count.sum() * percentile);
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= target)
+                    return (i + 1) * BUCKET_NANOS / 1e6;
+            }
+            return maxMillis();
+        }
+
+        double maxMillis() {
+            return maxNanos.get() / 1e6;
+        }
+    }
+
+    /**
+     * Process wide counters at one moment.
+     */
+    private static final class Snapshot {
+
+        private final long wallNanos = System.nanoTime();
+        private final long cpuNanos;
+        private final Map<Long, Long> allocatedBytes = new HashMap<>();
+        private final long collections;
+        private final long collectionMillis;
+        private final long frames;
+        private final long underruns;
+        private final long lateFrames;
+
+        Snapshot(FrameStatistics statistics) {
+            cpuNanos = ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+                    .getProcessCpuTime();
+
+            com.sun.management.ThreadMXBean threads =
+                    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            long[] ids = threads.getAllThreadIds();
+            long[] allocated = threads.getThreadAllocatedBytes(ids);
+            for (int i = 0; i < ids.length; i++) {
+                if (allocated[i] >= 0)
+                    allocatedBytes.put(ids[i], allocated[i]);
+            }
+
+            long count = 0;
+            long millis = 0;
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, collector.getCollectionCount());
+                millis += Math.max(0, collector.getCollectionTime());
+            }
+            collections = count;
+            collectionMillis = millis;
+
+            frames = statistics.getFrames();
+            underruns = statistics.getUnderruns();
+            lateFrames = statistics.getLateFrames();
+        }
+
+        /**
+         * Threads that ended in between take their allocations with them, the lavaplayer and sender threads live on.
+         */
+        long allocatedSince(Snapshot before) {
+            long allocated = 0;
+            for (Map.Entry<Long, Long> thread : allocatedBytes.entrySet()) {
+                allocated += thread.getValue() - before.allocatedBytes.getOrDefault(thread.getKey(), 0L);
+            }
+            return allocated;
+        }
+    }
+}
@@ -1,4 +1,5 @@
 import bot.Bottinator;
+import bot.Startup;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 
 public class App {
@@ -7,7 +8,12 @@ public class App {
 
     public static void main(String[] args)
     {
+        // Building the context only wires the components, the gateway, the music player and the steam catalog are
+        // started side by side afterwards
         AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(Config.class);
+        // Closes the context on exit, so components like the roll journal can write out what they still hold
+        context.registerShutdownHook();
         bottinator = context.getBean("bottinator", Bottinator.class);
+        context.getBean(Startup.class).start();
     }
 }
@@ -8,6 +8,8 @@ import org.springframework.context.annotation.PropertySource;
 @ComponentScan("bot")
 @ComponentScan("random")
 @ComponentScan("aspect")
+@ComponentScan("dice")
+@ComponentScan("journal")
 @PropertySource("classpath:../resources/bot.properties")
 public class Config {
 
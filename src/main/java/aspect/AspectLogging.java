@@ -1,27 +1,41 @@
 package aspect;
 
+import journal.RollJournal;
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.annotation.AfterReturning;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
-
 @Aspect
 @Component
 public class AspectLogging {
 
+    private final RollJournal rollJournal;
+
+    @Autowired
+    public AspectLogging(RollJournal rollJournal) {
+        this.rollJournal = rollJournal;
+    }
+
     @Pointcut("execution(* random.Random.nextInt(..))")
     public void randomNextInt() { }
 
+    @Pointcut("execution(* random.Random.nextInts(..))")
+    public void randomNextInts() { }
+
     @AfterReturning(pointcut="randomNextInt() && args(diceSize,..)", returning="randInt")
-    public void randLogging(JoinPoint joinPoint, int diceSize, int randInt) throws Exception{
+    public void randLogging(JoinPoint joinPoint, int diceSize, int randInt) {
+
+        rollJournal.record(diceSize, randInt);
+    }
+
+    @AfterReturning(pointcut="randomNextInts() && args(diceSize, randInts, offset, length)")
+    public void bulkRandLogging(JoinPoint joinPoint, int diceSize, int[] randInts, int offset, int length) {
 
-        String randLog = randInt + ",";
-        Files.write(Paths.get("./d" + diceSize + ".txt"), randLog.getBytes(), StandardOpenOption.APPEND);
+        // The journal copies the batch, the caller is free to turn the numbers into faces afterwards
+        rollJournal.record(diceSize, randInts, offset, length);
     }
 
 }
@@ -1,42 +1,99 @@
 package audio;
 
+import com.sedmelluq.discord.lavaplayer.format.StandardAudioDataFormats;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
-import com.sedmelluq.discord.lavaplayer.track.playback.AudioFrame;
+import com.sedmelluq.discord.lavaplayer.track.playback.MutableAudioFrame;
 import net.dv8tion.jda.core.audio.AudioSendHandler;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
 /**
  * This is a wrapper around AudioPlayer which makes it behave as an AudioSendHandler for JDA. As JDA calls canProvide
  * before every call to provide20MsAudio(), we pull the frame in canProvide() and use the frame we already pulled in
  * provide20MsAudio().
+ *
+ * Frames are pulled into one mutable frame backed by a buffer of this handler, so the player does not allocate a frame
+ * every 20 ms. JDA needs an array of exactly the frame length, one array per length is kept and reused. Opus frames
+ * of a stream only come in a limited range of lengths, so after the first seconds of a track no more arrays are made.
+ * JDA copies the array into its packet before asking for the next frame.
+ *
+ * Frames always come from the scheduler's active player, which changes when a warmed up track takes over. About once a
+ * second the scheduler gets the chance to warm up the next track.
  */
 public class AudioPlayerSendHandler implements AudioSendHandler {
-    private final AudioPlayer audioPlayer;
-    private AudioFrame lastFrame;
+
+    private static final long FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    // JDA asks every 20 ms, a frame asked for more than a frame late means the sending thread stalled
+    private static final long LATE_NANOS = 2 * FRAME_NANOS;
+    private static final int FRAMES_PER_PREFETCH_CHECK = 50;
+
+    private final TrackScheduler scheduler;
+    private final FrameStatistics statistics;
+    private final MutableAudioFrame frame = new MutableAudioFrame();
+    private final byte[][] framesByLength;
+    private boolean hasFrame;
+    private long lastRequest;
+    private int untilPrefetchCheck;
 
     /**
-     * @param audioPlayer Audio player to wrap.
+     * @param scheduler Scheduler whose active player is wrapped.
+     * @param statistics Counters to record frame delivery in.
      */
-    public AudioPlayerSendHandler(AudioPlayer audioPlayer) {
-        this.audioPlayer = audioPlayer;
+    public AudioPlayerSendHandler(TrackScheduler scheduler, FrameStatistics statistics) {
+        this.scheduler = scheduler;
+        this.statistics = statistics;
+
+        int maximumLength = StandardAudioDataFormats.DISCORD_OPUS.maximumChunkSize();
+        this.frame.setBuffer(ByteBuffer.allocate(maximumLength));
+        this.framesByLength = new byte[maximumLength + 1][];
     }
 
     @Override
     public boolean canProvide() {
-        if (lastFrame == null) {
-            lastFrame = audioPlayer.provide();
+        long now = System.nanoTime();
+        AudioPlayer audioPlayer = scheduler.getPlayer();
+        boolean playing = audioPlayer.getPlayingTrack() != null && !audioPlayer.isPaused();
+        if (playing && lastRequest != 0 && now - lastRequest > LATE_NANOS)
+            statistics.recordLate(now - lastRequest);
+        lastRequest = playing ? now : 0;
+
+        if (!hasFrame) {
+            hasFrame = audioPlayer.provide(frame);
+            if (!hasFrame && playing)
+                statistics.recordUnderrun();
         }
 
-        return lastFrame != null;
+        if (--untilPrefetchCheck <= 0) {
+            untilPrefetchCheck = FRAMES_PER_PREFETCH_CHECK;
+            scheduler.prefetchIfEnding();
+        }
+
+        return hasFrame;
     }
 
     @Override
     public byte[] provide20MsAudio() {
-        if (lastFrame == null) {
-            lastFrame = audioPlayer.provide();
+        if (!hasFrame) {
+            hasFrame = scheduler.getPlayer().provide(frame);
         }
+        if (!hasFrame)
+            return null;
+        hasFrame = false;
 
-        byte[] data = lastFrame != null ? lastFrame.getData() : null;
-        lastFrame = null;
+        long trackEnd = scheduler.takeTrackEnd();
+        if (trackEnd != 0)
+            statistics.recordTrackGap(System.nanoTime() - trackEnd);
+
+        int length = frame.getDataLength();
+        byte[] data = length < framesByLength.length ? framesByLength[length] : null;
+        if (data == null) {
+            data = new byte[length];
+            if (length < framesByLength.length)
+                framesByLength[length] = data;
+        }
+        frame.getData(data, 0);
+        statistics.recordFrame();
 
         return data;
     }
@@ -0,0 +1,66 @@
+package audio;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Frame delivery counters shared by the send handlers of every guild. An underrun is a frame JDA asked for while a
+ * track was playing but the player had none ready, a late frame is one asked for long after the previous one, which is
+ * what a stalled audio thread, for instance in a garbage collection pause, looks like. The track gap is the silence
+ * between the last frame of a track that ended on its own and the first frame of the track after it.
+ */
+public class FrameStatistics {
+
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder underruns = new LongAdder();
+    private final LongAdder lateFrames = new LongAdder();
+    private final LongAccumulator maxGapNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder trackSwitches = new LongAdder();
+    private final LongAdder trackGapNanos = new LongAdder();
+    private final LongAccumulator maxTrackGapNanos = new LongAccumulator(Math::max, 0);
+
+    void recordFrame() {
+        frames.increment();
+    }
+
+    void recordUnderrun() {
+        underruns.increment();
+    }
+
+    void recordLate(long gapNanos) {
+        lateFrames.increment();
+        maxGapNanos.accumulate(gapNanos);
+    }
+
+    void recordTrackGap(long gapNanos) {
+        trackSwitches.increment();
+        trackGapNanos.add(gapNanos);
+        maxTrackGapNanos.accumulate(gapNanos);
+    }
+
+    public long getFrames() {
+        return frames.sum();
+    }
+
+    public long getUnderruns() {
+        return underruns.sum();
+    }
+
+    public long getLateFrames() {
+        return lateFrames.sum();
+    }
+
+    public long getTrackSwitches() {
+        return trackSwitches.sum();
+    }
+
+    public String report() {
+        long switches = trackSwitches.sum();
+        return String.format("frames: %d sent, %d underruns, %d late, longest gap %d ms%n"
+                        + "track gaps: %d switches, %d ms average, %d ms longest",
+                frames.sum(), underruns.sum(), lateFrames.sum(), TimeUnit.NANOSECONDS.toMillis(maxGapNanos.get()),
+                switches, switches == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(trackGapNanos.sum() / switches),
+                TimeUnit.NANOSECONDS.toMillis(maxTrackGapNanos.get()));
+    }
+}
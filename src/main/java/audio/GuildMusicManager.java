@@ -3,33 +3,104 @@ package audio;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Holder for both the player and a track scheduler for one guild.
  */
 public class GuildMusicManager {
-    /**
-     * Audio player for the guild.
-     */
-    public final AudioPlayer player;
+
+    // lastUsed value of a manager that has been evicted and must not be used anymore
+    private static final long RETIRED = Long.MIN_VALUE;
+
     /**
      * Track scheduler for the player.
      */
     public final TrackScheduler scheduler;
+    /**
+     * Wrapper around the player to use it as an AudioSendHandler, created once.
+     */
+    private final AudioPlayerSendHandler sendHandler;
+
+    private final AtomicLong lastUsed = new AtomicLong(System.nanoTime());
+    private final AtomicBoolean sendHandlerInstalled = new AtomicBoolean();
 
     /**
-     * Creates a player and a track scheduler.
-     * @param manager Audio player manager to use for creating the player.
+     * Creates the players and a track scheduler.
+     * @param manager Audio player manager to use for creating the players.
+     * @param statistics Counters the send handler records frame delivery in.
+     * @param queueStore Where the scheduler keeps its queue.
+     * @param trackCodec Encodes the tracks waiting in the queue.
+     * @param guildId The guild the player belongs to.
      */
-    public GuildMusicManager(AudioPlayerManager manager) {
-        player = manager.createPlayer();
-        scheduler = new TrackScheduler(player);
+    public GuildMusicManager(AudioPlayerManager manager, FrameStatistics statistics, QueueStore queueStore,
+                             TrackCodec trackCodec, long guildId) {
+        AudioPlayer player = manager.createPlayer();
+        AudioPlayer standby = manager.createPlayer();
+        scheduler = new TrackScheduler(player, standby, queueStore, trackCodec, guildId);
         player.addListener(scheduler);
+        standby.addListener(scheduler);
+        sendHandler = new AudioPlayerSendHandler(scheduler, statistics);
+    }
+
+    /**
+     * @return Audio player for the guild that is currently heard.
+     */
+    public AudioPlayer getPlayer() {
+        return scheduler.getPlayer();
     }
 
     /**
      * @return Wrapper around AudioPlayer to use it as an AudioSendHandler.
      */
     public AudioPlayerSendHandler getSendHandler() {
-        return new AudioPlayerSendHandler(player);
+        return sendHandler;
+    }
+
+    /**
+     * @return true for the one caller that has to install the send handler with the guild's audio manager
+     */
+    public boolean claimSendHandlerInstall() {
+        return !sendHandlerInstalled.get() && sendHandlerInstalled.compareAndSet(false, true);
+    }
+
+    /**
+     * Marks the manager as used now.
+     *
+     * @return false if the manager has been retired and a new one has to be looked up
+     */
+    public boolean touch() {
+        long now = System.nanoTime();
+        while (true) {
+            long previous = lastUsed.get();
+            if (previous == RETIRED)
+                return false;
+            if (lastUsed.compareAndSet(previous, now))
+                return true;
+        }
+    }
+
+    /**
+     * Retires the manager if it has neither been used for the idle time nor is playing anything. A concurrent
+     * {@link #touch()} either keeps the manager alive or finds it retired, it never gets a manager about to be destroyed.
+     *
+     * @return true if the manager was retired
+     */
+    public boolean retireIfIdle(long idleNanos) {
+        long used = lastUsed.get();
+        if (used == RETIRED || System.nanoTime() - used < idleNanos)
+            return false;
+        AudioPlayer player = scheduler.getPlayer();
+        if (player.getPlayingTrack() != null && !player.isPaused())
+            return false;
+        return lastUsed.compareAndSet(used, RETIRED);
+    }
+
+    /**
+     * Stops playback and frees the players, the manager can not be used afterwards.
+     */
+    public void destroy() {
+        scheduler.destroy();
     }
 }
@@ -0,0 +1,177 @@
+package audio;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * Queue in a circular array that can also be read and edited by index. Adding at the end, taking from the front and
+ * reading any position are O(1). Removing at an index shifts the shorter side of the queue, O(min(i, n - i)), moving
+ * an element shifts the ones between its old and new place, O(|from - to|), and shuffling is O(n). All of these move
+ * array slots only, no nodes are allocated or unlinked.
+ *
+ * Not thread safe, the {@link TrackScheduler} guards it with its own lock.
+ *
+ * @param <E> element type
+ */
+final class IndexedQueue<E> implements Iterable<E> {
+
+    private Object[] elements = new Object[16];
+    private int head;
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void addLast(E element) {
+        if (size == elements.length)
+            grow(size + 1);
+        elements[slot(size)] = element;
+        size++;
+    }
+
+    void addAll(Collection<? extends E> added) {
+        if (size + added.size() > elements.length)
+            grow(size + added.size());
+        for (E element : added) {
+            elements[slot(size)] = element;
+            size++;
+        }
+    }
+
+    /**
+     * @return the first element, or null if the queue is empty
+     */
+    E peekFirst() {
+        return size == 0 ? null : element(head);
+    }
+
+    /**
+     * @return the removed first element, or null if the queue is empty
+     */
+    E pollFirst() {
+        if (size == 0)
+            return null;
+        E first = element(head);
+        elements[head] = null;
+        head = (head + 1) & (elements.length - 1);
+        size--;
+        return first;
+    }
+
+    E get(int index) {
+        checkIndex(index);
+        return element(slot(index));
+    }
+
+    void set(int index, E element) {
+        checkIndex(index);
+        elements[slot(index)] = element;
+    }
+
+    E removeAt(int index) {
+        checkIndex(index);
+        E removed = element(slot(index));
+        if (index < size / 2) {
+            // Shift the front one place back and drop the old head
+            for (int i = index; i > 0; i--) {
+                elements[slot(i)] = elements[slot(i - 1)];
+            }
+            elements[head] = null;
+            head = (head + 1) & (elements.length - 1);
+        } else {
+            for (int i = index; i < size - 1; i++) {
+                elements[slot(i)] = elements[slot(i + 1)];
+            }
+            elements[slot(size - 1)] = null;
+        }
+        size--;
+        return removed;
+    }
+
+    /**
+     * Moves an element so it ends up at the given index, the elements in between shift by one.
+     */
+    void move(int from, int to) {
+        checkIndex(from);
+        checkIndex(to);
+        Object moved = elements[slot(from)];
+        if (from < to) {
+            for (int i = from; i < to; i++) {
+                elements[slot(i)] = elements[slot(i + 1)];
+            }
+        } else {
+            for (int i = from; i > to; i--) {
+                elements[slot(i)] = elements[slot(i - 1)];
+            }
+        }
+        elements[slot(to)] = moved;
+    }
+
+    /**
+     * Fisher-Yates shuffle, the same random source always gives the same order so a shuffle can be replayed.
+     */
+    void shuffle(Random random) {
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int a = slot(i);
+            int b = slot(j);
+            Object swapped = elements[a];
+            elements[a] = elements[b];
+            elements[b] = swapped;
+        }
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public E next() {
+                if (index >= size)
+                    throw new NoSuchElementException();
+                return element(slot(index++));
+            }
+        };
+    }
+
+    private int slot(int index) {
+        return (head + index) & (elements.length - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private E element(int slot) {
+        return (E) elements[slot];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index " + index + " in a queue of " + size);
+    }
+
+    private void grow(int minimum) {
+        int capacity = elements.length;
+        while (capacity < minimum) {
+            capacity <<= 1;
+        }
+        // Unwrap into the new array so the queue starts at slot 0 again
+        Object[] grown = new Object[capacity];
+        for (int i = 0; i < size; i++) {
+            grown[i] = elements[slot(i)];
+        }
+        elements = grown;
+        head = 0;
+    }
+}
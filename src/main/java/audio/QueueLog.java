@@ -0,0 +1,285 @@
+package audio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Append only log of the changes to one guild's queue, with a mirror of the queue it describes. Replaying the log
+ * gives the queued tracks, the current track and how far it had played. Compacting rewrites the log as the shortest
+ * log giving the same state, and removes it once the queue is empty.
+ *
+ * Records, big endian: a type byte, then an int length and an encoded track for ADD and START, a long position in
+ * milliseconds for POSITION, an int index for REMOVE, two int indexes for MOVE, or the long seed of the
+ * {@link java.util.Random} the queue was shuffled with for SHUFFLE. A record cut off by a crash, or one that does not
+ * fit the queue, is dropped with everything after it when the log is opened again.
+ *
+ * Not thread safe, the {@link QueueStore} only uses it from its own thread.
+ */
+final class QueueLog {
+
+    private static final byte ADD = 1;
+    private static final byte START = 2;
+    private static final byte NEXT = 3;
+    private static final byte POSITION = 4;
+    private static final byte REMOVE = 5;
+    private static final byte MOVE = 6;
+    private static final byte SHUFFLE = 7;
+
+    private final Path path;
+    private final IndexedQueue<byte[]> queue = new IndexedQueue<>();
+    private byte[] current;
+    private long position;
+    private int records;
+    private FileChannel channel;
+
+    private QueueLog(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Replays the log without opening it for writing.
+     *
+     * @return the state the log describes, empty if there is no log
+     */
+    static QueueStore.QueueState read(Path path) throws IOException {
+        QueueLog log = new QueueLog(path);
+        log.replay();
+        return log.state();
+    }
+
+    /**
+     * Replays the log and opens it for appending, cutting off a record that was only partly written.
+     */
+    static QueueLog open(Path path) throws IOException {
+        QueueLog log = new QueueLog(path);
+        long complete = log.replay();
+        if (complete >= 0) {
+            log.channel = FileChannel.open(path, StandardOpenOption.WRITE);
+            log.channel.truncate(complete);
+            log.channel.position(complete);
+        }
+        return log;
+    }
+
+    /**
+     * @return length of the complete records, -1 if there is no log
+     */
+    private long replay() throws IOException {
+        ByteBuffer bytes;
+        try {
+            bytes = ByteBuffer.wrap(Files.readAllBytes(path));
+        } catch (NoSuchFileException e) {
+            return -1;
+        }
+
+        int complete = 0;
+        while (bytes.hasRemaining()) {
+            byte type = bytes.get();
+            if (type == ADD || type == START) {
+                if (bytes.remaining() < 4)
+                    break;
+                int length = bytes.getInt();
+                if (length < 0 || bytes.remaining() < length)
+                    break;
+                byte[] track = new byte[length];
+                bytes.get(track);
+                apply(type, track, 0, 0);
+            } else if (type == POSITION || type == SHUFFLE) {
+                if (bytes.remaining() < 8)
+                    break;
+                apply(type, null, bytes.getLong(), 0);
+            } else if (type == REMOVE) {
+                if (bytes.remaining() < 4 || !apply(type, null, bytes.getInt(), 0))
+                    break;
+            } else if (type == MOVE) {
+                if (bytes.remaining() < 8 || !apply(type, null, bytes.getInt(), bytes.getInt()))
+                    break;
+            } else if (type == NEXT) {
+                apply(type, null, 0, 0);
+            } else {
+                break;
+            }
+            records++;
+            complete = bytes.position();
+        }
+        return complete;
+    }
+
+    /**
+     * @param value the position, seed or first index of the record
+     * @param to the second index of a MOVE
+     * @return false if an index is outside the queue
+     */
+    private boolean apply(byte type, byte[] track, long value, int to) {
+        switch (type) {
+            case ADD:
+                queue.addLast(track);
+                break;
+            case START:
+                current = track;
+                position = 0;
+                break;
+            case NEXT:
+                current = queue.pollFirst();
+                position = 0;
+                break;
+            case REMOVE:
+                if (value < 0 || value >= queue.size())
+                    return false;
+                queue.removeAt((int) value);
+                break;
+            case MOVE:
+                if (value < 0 || value >= queue.size() || to < 0 || to >= queue.size())
+                    return false;
+                queue.move((int) value, to);
+                break;
+            case SHUFFLE:
+                queue.shuffle(new Random(value));
+                break;
+            default:
+                position = value;
+        }
+        return true;
+    }
+
+    void add(byte[] track) throws IOException {
+        apply(ADD, track, 0, 0);
+        append(trackRecord(ADD, track));
+    }
+
+    /**
+     * Adds several tracks with a single write.
+     */
+    void addAll(byte[][] tracks) throws IOException {
+        int length = 0;
+        for (byte[] track : tracks) {
+            apply(ADD, track, 0, 0);
+            length += 5 + track.length;
+        }
+        ByteBuffer record = ByteBuffer.allocate(length);
+        for (byte[] track : tracks) {
+            record.put(ADD).putInt(track.length).put(track);
+        }
+        record.flip();
+        append(record);
+        records += tracks.length - 1;
+    }
+
+    void start(byte[] track) throws IOException {
+        apply(START, track, 0, 0);
+        append(trackRecord(START, track));
+    }
+
+    void next() throws IOException {
+        apply(NEXT, null, 0, 0);
+        append((ByteBuffer) ByteBuffer.allocate(1).put(NEXT).flip());
+    }
+
+    void position(long newPosition) throws IOException {
+        if (current == null || newPosition == position)
+            return;
+        apply(POSITION, null, newPosition, 0);
+        append((ByteBuffer) ByteBuffer.allocate(9).put(POSITION).putLong(newPosition).flip());
+    }
+
+    void remove(int index) throws IOException {
+        if (!apply(REMOVE, null, index, 0))
+            throw new IOException("No queued track " + index + " to remove from " + path);
+        append((ByteBuffer) ByteBuffer.allocate(5).put(REMOVE).putInt(index).flip());
+    }
+
+    void move(int from, int to) throws IOException {
+        if (!apply(MOVE, null, from, to))
+            throw new IOException("No queued tracks " + from + " and " + to + " to move in " + path);
+        append((ByteBuffer) ByteBuffer.allocate(9).put(MOVE).putInt(from).putInt(to).flip());
+    }
+
+    void shuffle(long seed) throws IOException {
+        apply(SHUFFLE, null, seed, 0);
+        append((ByteBuffer) ByteBuffer.allocate(9).put(SHUFFLE).putLong(seed).flip());
+    }
+
+    /**
+     * @return true once most of the log describes changes that have been undone since
+     */
+    boolean needsCompaction() {
+        return records > 2 * (queue.size() + 2) + 32;
+    }
+
+    /**
+     * Replaces the log by one with just the current state, written beside it and moved in place so a crash leaves
+     * either the old or the new log.
+     */
+    void compact() throws IOException {
+        close();
+        if (current == null && queue.isEmpty()) {
+            Files.deleteIfExists(path);
+            records = 0;
+            return;
+        }
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            records = 0;
+            if (current != null) {
+                writeFully(out, trackRecord(START, current));
+                writeFully(out, (ByteBuffer) ByteBuffer.allocate(9).put(POSITION).putLong(position).flip());
+                records += 2;
+            }
+            for (byte[] track : queue) {
+                writeFully(out, trackRecord(ADD, track));
+                records++;
+            }
+            out.force(false);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    QueueStore.QueueState state() {
+        List<byte[]> queued = new ArrayList<>(queue.size());
+        for (byte[] track : queue) {
+            queued.add(track);
+        }
+        return new QueueStore.QueueState(queued, current, position);
+    }
+
+    void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void append(ByteBuffer record) throws IOException {
+        if (channel == null) {
+            Files.createDirectories(path.getParent());
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        }
+        writeFully(channel, record);
+        records++;
+    }
+
+    private static ByteBuffer trackRecord(byte type, byte[] track) {
+        ByteBuffer record = ByteBuffer.allocate(5 + track.length);
+        record.put(type).putInt(track.length).put(track);
+        record.flip();
+        return record;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package audio;
+
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps every guild's queue on disk, so queues and the playing position survive a restart. Changes are appended to
+ * one {@link QueueLog} per guild by a single background thread, so the players never wait on the disk, and logs that
+ * have grown well past their queue are compacted on a schedule. Tracks are stored encoded, see {@link TrackCodec}.
+ *
+ * A store without a directory keeps nothing.
+ */
+public class QueueStore {
+
+    private static final long COMPACT_MINUTES = 10;
+    // Logged for a track that could not be encoded, so the indexes in the log stay those of the queue
+    private static final byte[] NOT_ENCODED = new byte[0];
+
+    private final Path directory;
+    private final TrackCodec trackCodec;
+    private final ScheduledExecutorService writer;
+    // Only touched by the writer thread
+    private final Map<Long, QueueLog> logs = new HashMap<>();
+
+    /**
+     * @param directory folder of the queue logs, null to not keep queues
+     * @param trackCodec encodes the tracks for the logs
+     */
+    public QueueStore(Path directory, TrackCodec trackCodec) {
+        this.directory = directory;
+        this.trackCodec = trackCodec;
+        this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "queue-store");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (directory != null)
+            writer.scheduleWithFixedDelay(this::compactAll, COMPACT_MINUTES, COMPACT_MINUTES, TimeUnit.MINUTES);
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * A track was added to the end of the queue.
+     */
+    public void added(long guildId, AudioTrack track) {
+        byte[] encoded = encode(track);
+        submit(guildId, log -> log.add(encoded != null ? encoded : NOT_ENCODED));
+    }
+
+    /**
+     * Tracks were added to the end of the queue in one go.
+     *
+     * @param encoded the tracks as encoded by the {@link TrackCodec}, null for a track that could not be encoded
+     */
+    public void addedAll(long guildId, List<byte[]> encoded) {
+        if (!isEnabled() || encoded.isEmpty())
+            return;
+        byte[][] tracks = new byte[encoded.size()][];
+        for (int i = 0; i < tracks.length; i++) {
+            tracks[i] = encoded.get(i) != null ? encoded.get(i) : NOT_ENCODED;
+        }
+        submit(guildId, log -> log.addAll(tracks));
+    }
+
+    /**
+     * A track started playing without going through the queue.
+     */
+    public void started(long guildId, AudioTrack track) {
+        byte[] encoded = encode(track);
+        if (encoded != null)
+            submit(guildId, log -> log.start(encoded));
+    }
+
+    /**
+     * The first queued track, if any, replaced the current track.
+     */
+    public void advanced(long guildId) {
+        submit(guildId, QueueLog::next);
+    }
+
+    /**
+     * The queued track at the index, counted from 0, was removed.
+     */
+    public void removed(long guildId, int index) {
+        submit(guildId, log -> log.remove(index));
+    }
+
+    /**
+     * A queued track was moved from one index to another.
+     */
+    public void moved(long guildId, int from, int to) {
+        submit(guildId, log -> log.move(from, to));
+    }
+
+    /**
+     * The queue was shuffled by {@link IndexedQueue#shuffle} with a {@link java.util.Random} of the seed.
+     */
+    public void shuffled(long guildId, long seed) {
+        submit(guildId, log -> log.shuffle(seed));
+    }
+
+    /**
+     * Records how far the current track has played.
+     */
+    public void position(long guildId, long position) {
+        submit(guildId, log -> log.position(position));
+    }
+
+    /**
+     * Compacts and closes the log of a guild whose player is being dropped, it is opened again when the guild plays.
+     */
+    public void release(long guildId) {
+        if (!isEnabled())
+            return;
+        execute(() -> {
+            QueueLog log = logs.remove(guildId);
+            if (log != null) {
+                log.compact();
+                log.close();
+            }
+        });
+    }
+
+    /**
+     * Reads the queue of one guild, after every change submitted so far has been written.
+     *
+     * @return the queue, empty if nothing is stored for the guild
+     */
+    public QueueState restore(long guildId) {
+        if (!isEnabled())
+            return QueueState.EMPTY;
+        try {
+            return writer.submit(() -> log(guildId).state()).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return QueueState.EMPTY;
+        } catch (ExecutionException | RejectedExecutionException e) {
+            e.printStackTrace();
+            return QueueState.EMPTY;
+        }
+    }
+
+    /**
+     * Reads every stored queue in parallel, meant for startup before anything has been written.
+     *
+     * @return the non empty queues by guild id
+     */
+    public Map<Long, QueueState> restoreAll() {
+        if (!isEnabled() || !Files.isDirectory(directory))
+            return Collections.emptyMap();
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.queue")) {
+            stream.forEach(files::add);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Collections.emptyMap();
+        }
+
+        Map<Long, QueueState> states = new ConcurrentHashMap<>();
+        files.parallelStream().forEach(file -> {
+            String name = file.getFileName().toString();
+            try {
+                long guildId = Long.parseLong(name.substring(0, name.length() - ".queue".length()));
+                QueueState state = QueueLog.read(file);
+                if (!state.isEmpty())
+                    states.put(guildId, state);
+            } catch (NumberFormatException | IOException e) {
+                e.printStackTrace();
+            }
+        });
+        return states;
+    }
+
+    public AudioTrack decode(byte[] encoded) {
+        try {
+            return encoded != null && encoded.length > 0 ? trackCodec.decode(encoded) : null;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Writes out every pending change and closes the logs.
+     */
+    public void shutdown() throws InterruptedException {
+        execute(() -> {
+            for (QueueLog log : logs.values()) {
+                if (log.needsCompaction())
+                    log.compact();
+                log.close();
+            }
+            logs.clear();
+        });
+        writer.shutdown();
+        writer.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private void compactAll() {
+        for (QueueLog log : logs.values()) {
+            try {
+                if (log.needsCompaction())
+                    log.compact();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private byte[] encode(AudioTrack track) {
+        if (!isEnabled())
+            return null;
+        try {
+            return trackCodec.encode(track);
+        } catch (IOException e) {
+            // The queue still plays, it just will not survive a restart
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private void submit(long guildId, LogChange change) {
+        if (!isEnabled())
+            return;
+        execute(() -> {
+            QueueLog log = log(guildId);
+            change.apply(log);
+            if (log.needsCompaction())
+                log.compact();
+        });
+    }
+
+    private void execute(LogTask task) {
+        try {
+            writer.execute(() -> {
+                try {
+                    task.run();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shutting down, changes after the final flush are not kept
+        }
+    }
+
+    private QueueLog log(long guildId) throws IOException {
+        QueueLog log = logs.get(guildId);
+        if (log == null) {
+            log = QueueLog.open(directory.resolve(guildId + ".queue"));
+            logs.put(guildId, log);
+        }
+        return log;
+    }
+
+    private interface LogChange {
+        void apply(QueueLog log) throws IOException;
+    }
+
+    private interface LogTask {
+        void run() throws IOException;
+    }
+
+    /**
+     * A stored queue, with the tracks still encoded.
+     */
+    public static final class QueueState {
+
+        static final QueueState EMPTY = new QueueState(Collections.emptyList(), null, 0);
+
+        private final List<byte[]> queued;
+        private final byte[] current;
+        private final long position;
+
+        QueueState(List<byte[]> queued, byte[] current, long position) {
+            this.queued = queued;
+            this.current = current;
+            this.position = position;
+        }
+
+        public List<byte[]> getQueued() {
+            return queued;
+        }
+
+        /**
+         * @return the track that was playing, null if none was
+         */
+        public byte[] getCurrent() {
+            return current;
+        }
+
+        /**
+         * @return how far the current track had played, in milliseconds
+         */
+        public long getPosition() {
+            return position;
+        }
+
+        public boolean isEmpty() {
+            return current == null && queued.isEmpty();
+        }
+    }
+}
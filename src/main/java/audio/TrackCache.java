@@ -0,0 +1,327 @@
+package audio;
+
+import cache.LruCache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of resolved tracks and playlists by the identifier they were loaded with, so playing the same song again, in
+ * any guild, decodes it from memory instead of resolving it over the network. Tracks are stored encoded, see
+ * {@link TrackCodec}, which is a few hundred bytes each.
+ *
+ * Entries live in a least recently used memory cache, and optionally in a directory that survives restarts. Both
+ * tiers forget entries after the same time to live, resolved streams can go stale.
+ */
+public class TrackCache {
+
+    private static final int MAGIC = 0x54524B43; // "TRKC"
+    private static final int VERSION = 1;
+    // Far above any playlist or encoded track, only there so a damaged file can not ask for gigabytes
+    private static final int MAX_TRACKS = 100_000;
+    private static final int MAX_TRACK_BYTES = 64 * 1024;
+
+    private final LruCache<String, CachedTracks> memory;
+    private final long ttlMillis;
+    private final Path directory;
+
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param capacity entries kept in memory
+     * @param ttlMillis how long an entry is used after it was resolved
+     * @param directory where entries are also written, null to keep them in memory only
+     */
+    public TrackCache(int capacity, long ttlMillis, Path directory) {
+        this.memory = new LruCache<>(capacity, 0);
+        this.ttlMillis = ttlMillis;
+        this.directory = directory;
+        if (directory != null)
+            deleteExpiredFiles();
+    }
+
+    /**
+     * Canonical form of a load identifier. Links differing only in the scheme, a www. or mobile host, short links,
+     * tracking parameters or fragments map to the same key, searches ignore case and extra whitespace.
+     */
+    public static String normalize(String identifier) {
+        String trimmed = identifier.trim();
+        String lower = trimmed.toLowerCase(Locale.ROOT);
+
+        if (!lower.startsWith("http://") && !lower.startsWith("https://")) {
+            int colon = lower.indexOf(':');
+            if (colon > 0 && lower.substring(0, colon).endsWith("search"))
+                return lower.substring(0, colon + 1) + lower.substring(colon + 1).trim().replaceAll("\\s+", " ");
+            return trimmed;
+        }
+
+        URI uri;
+        try {
+            uri = new URI(trimmed);
+        } catch (URISyntaxException e) {
+            return trimmed;
+        }
+        if (uri.getHost() == null)
+            return trimmed;
+
+        String host = uri.getHost().toLowerCase(Locale.ROOT);
+        String path = uri.getRawPath() != null ? uri.getRawPath() : "";
+        List<String> parameters = new ArrayList<>();
+
+        if (host.startsWith("www."))
+            host = host.substring(4);
+        if (host.equals("m.youtube.com") || host.equals("music.youtube.com"))
+            host = "youtube.com";
+        if (host.equals("youtu.be") && path.length() > 1) {
+            parameters.add("v=" + path.substring(1));
+            host = "youtube.com";
+            path = "/watch";
+        }
+
+        if (uri.getRawQuery() != null) {
+            for (String parameter : uri.getRawQuery().split("&")) {
+                String name = parameter.split("=", 2)[0].toLowerCase(Locale.ROOT);
+                if (parameter.isEmpty() || name.startsWith("utm_") || name.equals("feature") || name.equals("si"))
+                    continue;
+                parameters.add(parameter);
+            }
+        }
+        parameters.sort(null);
+
+        StringBuilder key = new StringBuilder("https://").append(host);
+        if (uri.getPort() >= 0)
+            key.append(':').append(uri.getPort());
+        key.append(path);
+        if (!parameters.isEmpty())
+            key.append('?').append(String.join("&", parameters));
+        return key.toString();
+    }
+
+    /**
+     * @param key a normalized identifier
+     * @return the cached tracks, or null if there are none or they have expired
+     */
+    public CachedTracks get(String key) {
+        long now = System.currentTimeMillis();
+        CachedTracks cached = memory.get(key);
+        if (cached != null) {
+            if (!isExpired(cached, now)) {
+                memoryHits.increment();
+                return cached;
+            }
+            memory.remove(key);
+        }
+
+        if (directory != null) {
+            cached = read(key, now);
+            if (cached != null) {
+                memory.put(key, cached);
+                diskHits.increment();
+                return cached;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    public void put(String key, CachedTracks tracks) {
+        memory.put(key, tracks);
+        if (directory != null)
+            write(key, tracks);
+    }
+
+    /**
+     * Forgets an entry, for instance one whose tracks could not be decoded anymore.
+     */
+    public void remove(String key) {
+        memory.remove(key);
+        if (directory != null) {
+            try {
+                Files.deleteIfExists(file(key));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private boolean isExpired(CachedTracks cached, long now) {
+        return now - cached.resolvedMillis > ttlMillis;
+    }
+
+    /**
+     * Reads the entry of a key from its file. Expired and damaged files are deleted once the stream is closed.
+     */
+    private CachedTracks read(String key, long now) {
+        Path file = file(key);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(key))
+                return null;
+            long resolved = in.readLong();
+            // An expired file is deleted below, once the stream is closed
+            if (now - resolved <= ttlMillis) {
+                String playlistName = in.readBoolean() ? in.readUTF() : null;
+                byte[][] tracks = new byte[length(in.readInt(), MAX_TRACKS)][];
+                for (int i = 0; i < tracks.length; i++) {
+                    tracks[i] = new byte[length(in.readInt(), MAX_TRACK_BYTES)];
+                    in.readFully(tracks[i]);
+                }
+                return new CachedTracks(playlistName, tracks, resolved);
+            }
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (StreamCorruptedException | EOFException e) {
+            System.out.println("Deleting damaged track cache file " + file + ": " + e);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        deleteQuietly(file);
+        return null;
+    }
+
+    private static int length(int length, int limit) throws StreamCorruptedException {
+        if (length < 0 || length > limit)
+            throw new StreamCorruptedException("length " + length + " out of range");
+        return length;
+    }
+
+    /**
+     * Writes to a temporary file of its own first and moves it in place, so readers never see half an entry and two
+     * writes of the same key do not mix.
+     */
+    private void write(String key, CachedTracks tracks) {
+        Path file = file(key);
+        Path temporary = null;
+        try {
+            Files.createDirectories(directory);
+            temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try (OutputStream stream = Files.newOutputStream(temporary);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(key);
+                out.writeLong(tracks.resolvedMillis);
+                out.writeBoolean(tracks.playlistName != null);
+                if (tracks.playlistName != null)
+                    out.writeUTF(tracks.playlistName);
+                out.writeInt(tracks.tracks.length);
+                for (byte[] track : tracks.tracks) {
+                    out.writeInt(track.length);
+                    out.write(track);
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+            deleteQuietly(temporary);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null)
+            return;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Deletes expired entries, and temporary files left by writes that were cut off.
+     */
+    private void deleteExpiredFiles() {
+        if (!Files.isDirectory(directory))
+            return;
+        long oldest = System.currentTimeMillis() - ttlMillis;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.{tracks,tmp}")) {
+            for (Path file : files) {
+                if (Files.getLastModifiedTime(file).toMillis() < oldest)
+                    Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private Path file(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(digest.length * 2 + 7);
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return directory.resolve(name.append(".tracks").toString());
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to have SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public String report() {
+        return String.format("track cache: %d in memory, %d memory hits, %d disk hits, %d misses, ttl %d min%s",
+                memory.size(), memoryHits.sum(), diskHits.sum(), misses.sum(),
+                TimeUnit.MILLISECONDS.toMinutes(ttlMillis), directory != null ? ", on disk in " + directory : "");
+    }
+
+    /**
+     * The encoded tracks one identifier resolved to.
+     */
+    public static final class CachedTracks {
+
+        private final String playlistName;
+        private final byte[][] tracks;
+        private final long resolvedMillis;
+
+        /**
+         * @param playlistName name of the playlist the identifier resolved to, null for a single track
+         * @param tracks the encoded tracks
+         * @param resolvedMillis when the identifier was resolved
+         */
+        public CachedTracks(String playlistName, byte[][] tracks, long resolvedMillis) {
+            this.playlistName = playlistName;
+            this.tracks = tracks;
+            this.resolvedMillis = resolvedMillis;
+        }
+
+        public boolean isPlaylist() {
+            return playlistName != null;
+        }
+
+        public String getPlaylistName() {
+            return playlistName;
+        }
+
+        public int size() {
+            return tracks.length;
+        }
+
+        public byte[] getTrack(int index) {
+            return tracks[index];
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package audio;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.tools.io.MessageInput;
+import com.sedmelluq.discord.lavaplayer.tools.io.MessageOutput;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.DecodedTrackHolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Turns tracks into lavaplayer's compact binary form and back. An encoded track holds everything needed to play it
+ * again without resolving it over the network, and every decode gives a fresh track that can be played on its own.
+ */
+public class TrackCodec {
+
+    private final AudioPlayerManager playerManager;
+
+    public TrackCodec(AudioPlayerManager playerManager) {
+        this.playerManager = playerManager;
+    }
+
+    public byte[] encode(AudioTrack track) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        playerManager.encodeTrack(new MessageOutput(bytes), track);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @throws IOException if the bytes are not a track, or its source is not registered with the player manager
+     */
+    public AudioTrack decode(byte[] encoded) throws IOException {
+        DecodedTrackHolder holder = playerManager.decodeTrack(new MessageInput(new ByteArrayInputStream(encoded)));
+        if (holder == null || holder.decodedTrack == null)
+            throw new IOException("Encoded track could not be decoded");
+        return holder.decodedTrack;
+    }
+}
@@ -5,24 +5,75 @@ import com.sedmelluq.discord.lavaplayer.player.event.AudioEventAdapter;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrackEndReason;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * This class schedules tracks for the audio player. It contains the queue of tracks.
+ * This class schedules tracks for the audio player. It contains the queue of tracks. Every change to the queue is
+ * also written to the {@link QueueStore}. The queue can be edited by position, and is listed in pages whose text is
+ * kept until the queue changes.
+ *
+ * Playlists are added in one go. Their tracks are kept in the queue in the encoded form of the {@link TrackCodec},
+ * a few hundred bytes each instead of a track object with its source state, and are only decoded when they reach the
+ * head of the queue or are shown.
+ *
+ * The scheduler owns two players. The active one is the one being heard, the standby one warms up the head of the
+ * queue during the last seconds of the current track: a copy of the next track is started paused on it, so it is
+ * loaded and its frame buffer filled while the current track plays out. When the current track ends the players trade
+ * places and the next track starts from a full buffer instead of from the network.
  */
 public class TrackScheduler extends AudioEventAdapter {
-    private final AudioPlayer player;
-    private final BlockingQueue<AudioTrack> queue;
+
+    // How long before the end of the current track the next one is warmed up, about the player's frame buffer
+    private static final long PREFETCH_MILLIS = 5000;
+    private static final int PAGE_SIZE = 15;
+    // Keeps a full page well below Discord's limit of 2000 characters per message
+    private static final int MAX_TITLE_LENGTH = 80;
+
+    private volatile AudioPlayer active;
+    private AudioPlayer standby;
+    // Holds an AudioTrack, or the byte[] of an encoded track that has not been needed yet
+    private final IndexedQueue<Object> queue;
+    private final QueueStore queueStore;
+    private final TrackCodec trackCodec;
+    private final long guildId;
+
+    // The queued track warming up on the standby player and the copy of it playing there, guarded by the queue lock
+    private AudioTrack prefetchSource;
+    private AudioTrack prefetched;
+    // Rendered pages of the queue, null when the queue has changed since, guarded by the queue lock
+    private String[] pages;
+
+    // When the last track that ended on its own stopped sending, 0 once the next track sent its first frame
+    private final AtomicLong trackEndedAt = new AtomicLong();
+
+    /**
+     * @param player The audio player this scheduler starts with
+     * @param standby The audio player the next track is warmed up on
+     * @param queueStore Where changes to the queue are kept
+     * @param trackCodec Encodes the tracks of playlists while they wait in the queue
+     * @param guildId The guild the queue belongs to
+     */
+    public TrackScheduler(AudioPlayer player, AudioPlayer standby, QueueStore queueStore, TrackCodec trackCodec,
+                          long guildId) {
+        this.active = player;
+        this.standby = standby;
+        this.queue = new IndexedQueue<>();
+        this.queueStore = queueStore;
+        this.trackCodec = trackCodec;
+        this.guildId = guildId;
+    }
 
     /**
-     * @param player The audio player this scheduler uses
+     * @return The player that is heard, it changes every time a warmed up track is switched to
      */
-    public TrackScheduler(AudioPlayer player) {
-        this.player = player;
-        this.queue = new LinkedBlockingQueue<>();
+    public AudioPlayer getPlayer() {
+        return active;
     }
 
     /**
@@ -34,36 +85,384 @@ public class TrackScheduler extends AudioEventAdapter {
         // Calling startTrack with the noInterrupt set to true will start the track only if nothing is currently playing. If
         // something is playing, it returns false and does nothing. In that case the player was already playing so this
         // track goes to the queue instead.
-        if (!player.startTrack(track, true)) {
-            player.setPaused(false);
-            queue.offer(track);
+        AudioPlayer player = active;
+        if (player.startTrack(track, true)) {
+            if (logStart(player, track))
+                return;
+            // The players traded places in between, the track went to the standby player and is queued instead
+            player.stopTrack();
+            track = track.makeClone();
+        }
+
+        active.setPaused(false);
+        // The queue and its log must see additions in the same order, the active player is never called holding it
+        synchronized (queue) {
+            queue.addLast(track);
+            queueStore.added(guildId, track);
+            pages = null;
+        }
+    }
+
+    /**
+     * Adds a playlist in one go, the first track plays right away if nothing is playing. The other tracks are queued
+     * encoded, a track that can not be encoded is queued as it is.
+     *
+     * @param tracks The tracks to play or add to queue.
+     */
+    public void queueAll(List<AudioTrack> tracks) {
+        if (tracks.isEmpty())
+            return;
+        List<Object> rest = new ArrayList<>(tracks.size() - 1);
+        List<byte[]> encoded = new ArrayList<>(tracks.size() - 1);
+        for (int i = 1; i < tracks.size(); i++) {
+            byte[] bytes = encode(tracks.get(i));
+            rest.add(bytes != null ? bytes : tracks.get(i));
+            encoded.add(bytes);
         }
+        queueAll(tracks.get(0), rest, encoded);
+    }
+
+    /**
+     * Adds a playlist that is already encoded, only the first track is decoded before it is needed.
+     *
+     * @param first The decoded first track, played right away if nothing is playing
+     * @param rest The other tracks, encoded by the {@link TrackCodec}
+     */
+    public void queueAllEncoded(AudioTrack first, List<byte[]> rest) {
+        queueAll(first, new ArrayList<Object>(rest), rest);
     }
 
     /**
-     * Start the next track, stopping the current one if it is playing.
+     * @param rest The tracks after the first, encoded or not
+     * @param encoded The same tracks as they are logged, null for a track that could not be encoded
+     */
+    private void queueAll(AudioTrack first, List<Object> rest, List<byte[]> encoded) {
+        AudioPlayer player = active;
+        boolean started = player.startTrack(first, true);
+        if (started && !logStart(player, first)) {
+            // The players traded places in between, see queue
+            player.stopTrack();
+            first = first.makeClone();
+            started = false;
+        }
+
+        active.setPaused(false);
+        synchronized (queue) {
+            if (!started) {
+                queue.addLast(first);
+                queueStore.added(guildId, first);
+            }
+            queue.addAll(rest);
+            queueStore.addedAll(guildId, encoded);
+            pages = null;
+        }
+    }
+
+    /**
+     * Logs a track that was just started on the player. The end of the track logs a NEXT under the queue lock, so
+     * checking under the lock that the track still plays keeps a track that failed to load or already finished from
+     * being logged after its own NEXT, and replayed as the current track.
+     *
+     * @return false if the players traded places since the track was started, nothing is logged then
+     */
+    private boolean logStart(AudioPlayer player, AudioTrack track) {
+        synchronized (queue) {
+            if (player != active)
+                return false;
+            if (player.getPlayingTrack() == track)
+                queueStore.started(guildId, track);
+            return true;
+        }
+    }
+
+    /**
+     * Start the next track, stopping the current one if it is playing. If the next track has been warmed up on the
+     * standby player, that player takes over.
      */
     public void nextTrack() {
+        AudioTrack next;
+        AudioTrack warm;
+        AudioTrack stale;
+        AudioPlayer previous;
+        AudioPlayer player;
+        AudioPlayer idle;
+        synchronized (queue) {
+            next = resolveHead();
+            queue.pollFirst();
+            queueStore.advanced(guildId);
+            if (next != null)
+                pages = null;
+
+            warm = next != null && next == prefetchSource ? prefetched : null;
+            stale = warm == null ? prefetched : null;
+            prefetchSource = null;
+            prefetched = null;
+
+            previous = active;
+            if (warm != null) {
+                active = standby;
+                standby = previous;
+            }
+            player = active;
+            idle = standby;
+        }
+
+        if (warm != null) {
+            player.setVolume(previous.getVolume());
+            player.setPaused(previous.isPaused());
+            previous.stopTrack();
+            if (player.getPlayingTrack() == warm)
+                return;
+            // Loading the copy failed, the queued track itself has never been played and is loaded now instead
+        } else if (stale != null) {
+            // The queue changed while the old head was warming up
+            idle.stopTrack();
+        }
+
         // Start the next track, regardless of if something is already playing or not. In case queue was empty, we are
         // giving null to startTrack, which is a valid argument and will simply stop the player.
-        player.startTrack(queue.poll(), false);
+        player.startTrack(next, false);
+    }
+
+    /**
+     * Warms up the head of the queue on the standby player once the current track is about to end. Cheap enough to be
+     * called every second from the audio sending thread.
+     */
+    public void prefetchIfEnding() {
+        AudioPlayer player = active;
+        AudioTrack playing = player.getPlayingTrack();
+        if (playing == null || player.isPaused() || playing.getInfo().isStream
+                || playing.getDuration() - playing.getPosition() > PREFETCH_MILLIS)
+            return;
+
+        // The standby player is only started under the queue lock, so nextTrack never switches to it half way. Its
+        // events are ignored by onTrackEnd without taking the lock, so this can not deadlock with the player.
+        synchronized (queue) {
+            AudioTrack head = resolveHead();
+            if (head == null || head == prefetchSource)
+                return;
+            prefetchSource = head;
+            prefetched = head.makeClone();
+            standby.setVolume(player.getVolume());
+            standby.setPaused(true);
+            standby.startTrack(prefetched, false);
+        }
+    }
+
+    /**
+     * Decodes the head of the queue if it is still encoded. Heads that can not be decoded anymore are dropped, so the
+     * queue never stalls on them. Called holding the queue lock.
+     *
+     * @return The first track of the queue, or null if the queue is empty
+     */
+    private AudioTrack resolveHead() {
+        while (!queue.isEmpty()) {
+            Object head = queue.peekFirst();
+            if (head instanceof AudioTrack)
+                return (AudioTrack) head;
+            AudioTrack decoded = decode((byte[]) head);
+            if (decoded != null) {
+                queue.set(0, decoded);
+                return decoded;
+            }
+            queue.pollFirst();
+            queueStore.removed(guildId, 0);
+            pages = null;
+        }
+        return null;
+    }
+
+    /**
+     * @return The track, decoded for the occasion if it is still encoded, null if that fails
+     */
+    private AudioTrack peekTrack(Object entry) {
+        return entry instanceof AudioTrack ? (AudioTrack) entry : decode((byte[]) entry);
+    }
+
+    private byte[] encode(AudioTrack track) {
+        try {
+            return trackCodec.encode(track);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private AudioTrack decode(byte[] encoded) {
+        try {
+            return encoded.length > 0 ? trackCodec.decode(encoded) : null;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Takes the time the last track ended on its own if the track after it has not sent a frame yet.
+     *
+     * @return System.nanoTime() of the end, or 0 if there is no switch to measure
+     */
+    long takeTrackEnd() {
+        return trackEndedAt.get() == 0 ? 0 : trackEndedAt.getAndSet(0);
+    }
+
+    /**
+     * Puts back a queue read from the {@link QueueStore}, the current track is started paused where it was left.
+     * Nothing is written to the store, it already holds this queue. The waiting tracks stay encoded until needed.
+     *
+     * @param current The track that was playing, or null
+     * @param position How far the current track had played, in milliseconds
+     * @param queued The encoded tracks that were waiting
+     */
+    public void restore(AudioTrack current, long position, List<byte[]> queued) {
+        if (current != null) {
+            current.setPosition(position);
+            active.startTrack(current, false);
+            active.setPaused(true);
+        }
+        synchronized (queue) {
+            queue.addAll(queued);
+            pages = null;
+        }
     }
 
-    public List<String> queuedTracks() {
-        List<String> tracks = new ArrayList<>();
-        for (AudioTrack audioTrack : queue){
-            tracks.add(audioTrack.getInfo().title);
+    /**
+     * @param index Position in the queue, counted from 0
+     * @return The title of the removed track, or null if there is no track at the index
+     */
+    public String remove(int index) {
+        synchronized (queue) {
+            if (index < 0 || index >= queue.size())
+                return null;
+            Object removed = queue.removeAt(index);
+            queueStore.removed(guildId, index);
+            pages = null;
+            return title(peekTrack(removed));
         }
+    }
 
-        return tracks;
+    /**
+     * Moves a queued track, the tracks in between shift by one place.
+     *
+     * @param from Position of the track, counted from 0
+     * @param to Position the track ends up at, counted from 0
+     * @return The title of the moved track, or null if either position is outside the queue
+     */
+    public String move(int from, int to) {
+        synchronized (queue) {
+            if (from < 0 || from >= queue.size() || to < 0 || to >= queue.size())
+                return null;
+            Object moved = queue.get(from);
+            if (from != to) {
+                queue.move(from, to);
+                queueStore.moved(guildId, from, to);
+                pages = null;
+            }
+            return title(peekTrack(moved));
+        }
+    }
+
+    /**
+     * Shuffles the queue. The seed is logged instead of the new order, replaying it gives the same order.
+     *
+     * @return The number of shuffled tracks
+     */
+    public int shuffle() {
+        long seed = ThreadLocalRandom.current().nextLong();
+        synchronized (queue) {
+            if (queue.size() > 1) {
+                queue.shuffle(new Random(seed));
+                queueStore.shuffled(guildId, seed);
+                pages = null;
+            }
+            return queue.size();
+        }
+    }
+
+    public int queueSize() {
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+
+    /**
+     * Lists one page of the queue. Pages are rendered once and kept until the queue changes.
+     *
+     * @param page Page number counted from 1, a page past the end gives the last page
+     * @return The page, or an empty string if the queue is empty
+     */
+    public String queuePage(int page) {
+        synchronized (queue) {
+            if (queue.isEmpty())
+                return "";
+            int pageCount = (queue.size() + PAGE_SIZE - 1) / PAGE_SIZE;
+            int index = Math.max(1, Math.min(page, pageCount)) - 1;
+            if (pages == null)
+                pages = new String[pageCount];
+            if (pages[index] == null)
+                pages[index] = renderPage(index, pageCount);
+            return pages[index];
+        }
+    }
+
+    private String renderPage(int index, int pageCount) {
+        StringBuilder text = new StringBuilder();
+        text.append("Queue page ").append(index + 1).append(" of ").append(pageCount)
+                .append(", ").append(queue.size()).append(" tracks");
+        int end = Math.min(queue.size(), (index + 1) * PAGE_SIZE);
+        for (int i = index * PAGE_SIZE; i < end; i++) {
+            AudioTrack track = peekTrack(queue.get(i));
+            String title = title(track);
+            if (title.length() > MAX_TITLE_LENGTH)
+                title = title.substring(0, MAX_TITLE_LENGTH - 3) + "...";
+            text.append("\n`").append(i + 1).append(".` ").append(title)
+                    .append(" [").append(formatDuration(track)).append(']');
+        }
+        return text.toString();
+    }
+
+    private static String title(AudioTrack track) {
+        if (track == null)
+            return "unreadable track";
+        return track.getInfo().title != null ? track.getInfo().title : track.getIdentifier();
+    }
+
+    private static String formatDuration(AudioTrack track) {
+        if (track == null)
+            return "?";
+        if (track.getInfo().isStream)
+            return "live";
+        long seconds = TimeUnit.MILLISECONDS.toSeconds(track.getDuration());
+        return seconds >= 3600
+                ? String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60)
+                : String.format("%d:%02d", seconds / 60, seconds % 60);
+    }
+
+    /**
+     * Stops playback and frees both players.
+     */
+    public void destroy() {
+        AudioPlayer player;
+        AudioPlayer idle;
+        synchronized (queue) {
+            player = active;
+            idle = standby;
+        }
+        player.destroy();
+        idle.destroy();
     }
 
     @Override
     public void onTrackEnd(AudioPlayer player, AudioTrack track, AudioTrackEndReason endReason) {
+        // Tracks warming up on the standby player, or replaced there, do not move the queue
+        if (player != active)
+            return;
+
         // Only start the next track if the end reason is suitable for it (FINISHED or LOAD_FAILED)
         if (endReason.mayStartNext) {
-
+            long ended = System.nanoTime();
             nextTrack();
+            trackEndedAt.set(active.getPlayingTrack() != null ? ended : 0);
         }
     }
 }
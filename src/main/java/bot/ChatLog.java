@@ -0,0 +1,170 @@
+package bot;
+
+import metrics.MetricsReporter;
+import net.dv8tion.jda.client.entities.Group;
+import net.dv8tion.jda.core.entities.ChannelType;
+import net.dv8tion.jda.core.entities.Message;
+import net.dv8tion.jda.core.entities.User;
+import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Optional console log of the messages the bot sees. The event thread only decides whether a message is logged and
+ * queues it, rendering the message and writing it to the console happens on a background thread.
+ *
+ * At most {@code CHAT_LOG_PER_SECOND} messages are logged per second, the rest are only counted and the count is
+ * logged with the next line. The log is off unless the rate is set.
+ */
+@Component
+public class ChatLog implements MetricsReporter, DisposableBean {
+
+    private final int perSecond;
+    private final BlockingQueue<MessageReceivedEvent> queue;
+    private final Thread writer;
+
+    private static final int COUNT_BITS = 24;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    // The current second in the high bits and the messages logged in it in the low bits, so the event threads of all
+    // shards sample without a lock and a full second costs them a single read
+    private final AtomicLong window = new AtomicLong();
+
+    private final LongAdder logged = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private long reportedSkips;
+
+    /**
+     * @param perSecond most messages logged per second, 0 to leave the log off
+     * @param queueSize messages that can wait for the writer before more are dropped
+     */
+    @Autowired
+    public ChatLog(@Value("${CHAT_LOG_PER_SECOND:0}") int perSecond,
+                   @Value("${CHAT_LOG_QUEUE_SIZE:1024}") int queueSize) {
+        this.perSecond = (int) Math.min(perSecond, COUNT_MASK);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+        this.writer = new Thread(this::write, "chat-log");
+        writer.setDaemon(true);
+        if (isEnabled())
+            writer.start();
+    }
+
+    public boolean isEnabled() {
+        return perSecond > 0;
+    }
+
+    /**
+     * Queues the message for logging if this second still has room, never blocks.
+     */
+    public void log(MessageReceivedEvent event) {
+        if (!isEnabled())
+            return;
+        if (!sample()) {
+            sampledOut.increment();
+            return;
+        }
+        if (!queue.offer(event))
+            dropped.increment();
+    }
+
+    private boolean sample() {
+        long second = (System.nanoTime() / 1_000_000_000L) << COUNT_BITS;
+        while (true) {
+            long current = window.get();
+            if ((current & ~COUNT_MASK) != second) {
+                if (window.compareAndSet(current, second | 1))
+                    return true;
+            } else if ((current & COUNT_MASK) >= perSecond) {
+                return false;
+            } else if (window.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void write() {
+        List<MessageReceivedEvent> batch = new ArrayList<>();
+        StringBuilder lines = new StringBuilder();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch);
+
+            long skips = sampledOut.sum() + dropped.sum();
+            if (skips > reportedSkips) {
+                lines.append("(").append(skips - reportedSkips).append(" messages not logged)\n");
+                reportedSkips = skips;
+            }
+            for (MessageReceivedEvent event : batch) {
+                try {
+                    lines.append(format(event)).append('\n');
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+            // One console write per batch instead of one per message
+            System.out.print(lines);
+            logged.add(batch.size());
+            lines.setLength(0);
+            batch.clear();
+        }
+    }
+
+    private static String format(MessageReceivedEvent event) {
+
+        User author = event.getAuthor();                //The user that sent the message
+        Message message = event.getMessage();           //The message that was received.
+        String msg = message.getContentDisplay();       //This returns a human readable version of the Message, with mentions rendered.
+
+        if (event.isFromType(ChannelType.TEXT))         //If this message was sent to a Guild TextChannel
+        {
+            String name;
+            if (message.isWebhookMessage())
+                name = author.getName();                //If this is a Webhook message, then there is no Member associated
+            else                                        // with the User, thus we default to the author for name.
+                name = event.getMember().getEffectiveName();
+
+            return String.format("(%s)[%s]<%s>: %s", event.getGuild().getName(), event.getTextChannel().getName(),
+                    name, msg);
+        }
+        else if (event.isFromType(ChannelType.PRIVATE)) //If this message was sent to a PrivateChannel
+        {
+            return String.format("[PRIV]<%s>: %s", author.getName(), msg);
+        }
+        else if (event.isFromType(ChannelType.GROUP))   //If this message was sent to a Group. This is CLIENT only!
+        {
+            Group group = event.getGroup();
+            String groupName = group.getName() != null ? group.getName() : "";  //A group name can be null due to it being unnamed.
+            return String.format("[GRP: %s]<%s>: %s", groupName, author.getName(), msg);
+        }
+        return String.format("<%s>: %s", author.getName(), msg);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        writer.interrupt();
+        writer.join(TimeUnit.SECONDS.toMillis(1));
+    }
+
+    @Override
+    public String reportMetrics() {
+        if (!isEnabled())
+            return "chat log: off";
+        return String.format("chat log: %d logged, %d over the rate, %d dropped, %d queued",
+                logged.sum(), sampledOut.sum(), dropped.sum(), queue.size());
+    }
+}
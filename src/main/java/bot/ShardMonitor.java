@@ -0,0 +1,113 @@
+package bot;
+
+import metrics.MetricsReporter;
+import net.dv8tion.jda.core.JDA;
+import net.dv8tion.jda.core.events.Event;
+import net.dv8tion.jda.core.events.ReadyEvent;
+import net.dv8tion.jda.core.events.ReconnectedEvent;
+import net.dv8tion.jda.core.events.ResumedEvent;
+import net.dv8tion.jda.core.hooks.ListenerAdapter;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Readiness and event rate of every gateway shard. Each shard gets its own listener, which runs on that shard's event
+ * thread, so counting never contends between shards.
+ */
+@Component
+public class ShardMonitor implements MetricsReporter {
+
+    private final Map<Integer, ShardListener> shards = new ConcurrentSkipListMap<>();
+
+    /**
+     * @return the listener to register with the shard, it records the shard's readiness and counts its events
+     */
+    public ShardListener listener(int shardId) {
+        return shards.computeIfAbsent(shardId, ShardListener::new);
+    }
+
+    @Override
+    public String reportMetrics() {
+        StringBuilder report = new StringBuilder("shards:");
+        for (ShardListener shard : shards.values()) {
+            report.append('\n').append(shard.report());
+        }
+        return report.toString();
+    }
+
+    public static final class ShardListener extends ListenerAdapter {
+
+        private final int shardId;
+        private final long createdNanos = System.nanoTime();
+        private final LongAdder events = new LongAdder();
+        private volatile JDA jda;
+        private volatile long readyNanos;
+        // Only written by the shard's event thread
+        private volatile int reconnects;
+        private volatile int resumes;
+
+        // Events and time at the previous report, the rate is measured between reports
+        private long reportedEvents;
+        private long reportedNanos = createdNanos;
+
+        private ShardListener(int shardId) {
+            this.shardId = shardId;
+        }
+
+        @Override
+        public void onGenericEvent(Event event) {
+            events.increment();
+        }
+
+        /**
+         * Fired once per shard, when it has logged in and loaded its guilds.
+         */
+        @Override
+        public void onReady(ReadyEvent event) {
+            jda = event.getJDA();
+            readyNanos = System.nanoTime();
+        }
+
+        /**
+         * The session could not be resumed, the shard identified again and reloaded its guilds.
+         */
+        @Override
+        public void onReconnect(ReconnectedEvent event) {
+            reconnects++;
+        }
+
+        @Override
+        public void onResume(ResumedEvent event) {
+            resumes++;
+        }
+
+        private synchronized String report() {
+            long now = System.nanoTime();
+            long total = events.sum();
+            double rate = (total - reportedEvents) / ((now - reportedNanos) / 1e9);
+            reportedEvents = total;
+            reportedNanos = now;
+
+            JDA shard = jda;
+            long ready = readyNanos;
+            return String.format("shard %d: %s, %s, %d guilds, ping %d ms, %d events, %.1f events/s since last report",
+                    shardId, shard != null ? shard.getStatus() : "LOGGING_IN",
+                    ready == 0 ? "not ready yet" : String.format("ready after %.1f s, %d full reconnects, %d resumes",
+                            (ready - createdNanos) / 1e9, reconnects, resumes),
+                    shard != null ? shard.getGuilds().size() : 0, shard != null ? shard.getPing() : -1,
+                    total, rate);
+        }
+
+        /**
+         * @return how long the shard took from being built to its first ready event, -1 if it is not ready yet
+         */
+        public long getReadyMillis() {
+            long ready = readyNanos;
+            return ready == 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(ready - createdNanos);
+        }
+    }
+}
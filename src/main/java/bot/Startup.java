@@ -0,0 +1,167 @@
+package bot;
+
+import metrics.MetricsReporter;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Starts the slow subsystems side by side once every component is wired. Components only register their start phase
+ * while they are constructed, so building the context does no network or disk work, and {@link #start()} then runs
+ * every phase on its own thread. A subsystem is ready when its phase returns, commands check the subsystems they need
+ * and the others keep serving in the meantime.
+ *
+ * Times are measured from the start of the JVM, so they include loading the context.
+ */
+@Component
+public class Startup implements MetricsReporter {
+
+    public enum Subsystem {
+        GATEWAY("the discord connection"),
+        AUDIO("the music player"),
+        STEAM_CATALOG("the steam catalog");
+
+        private final String description;
+
+        Subsystem(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    private final Map<Subsystem, Runnable> phases = new EnumMap<>(Subsystem.class);
+    private final Map<Subsystem, CompletableFuture<Long>> ready = new EnumMap<>(Subsystem.class);
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicBoolean commandServed = new AtomicBoolean();
+    private volatile long firstCommandMillis = -1;
+
+    public Startup() {
+        for (Subsystem subsystem : Subsystem.values()) {
+            ready.put(subsystem, new CompletableFuture<>());
+        }
+    }
+
+    /**
+     * Registers the work that makes the subsystem ready. Only called while the context is built.
+     */
+    public synchronized void register(Subsystem subsystem, Runnable phase) {
+        if (started.get())
+            throw new IllegalStateException("Startup phases are already running");
+        if (phases.put(subsystem, phase) != null)
+            throw new IllegalStateException(subsystem + " has two startup phases");
+    }
+
+    /**
+     * Runs every registered phase on its own thread and returns right away. Subsystems without a phase are ready now.
+     */
+    public synchronized void start() {
+        if (!started.compareAndSet(false, true))
+            return;
+
+        for (Subsystem subsystem : Subsystem.values()) {
+            Runnable phase = phases.get(subsystem);
+            if (phase == null) {
+                ready.get(subsystem).complete(uptimeMillis());
+                continue;
+            }
+            Thread thread = new Thread(() -> run(subsystem, phase), "startup-" + subsystem.name().toLowerCase());
+            thread.setDaemon(true);
+            thread.start();
+        }
+        System.out.println("Context ready after " + uptimeMillis() + " ms, starting " + phases.keySet());
+    }
+
+    private void run(Subsystem subsystem, Runnable phase) {
+        try {
+            phase.run();
+            long millis = uptimeMillis();
+            ready.get(subsystem).complete(millis);
+            System.out.println(subsystem + " ready after " + millis + " ms");
+            if (subsystem == Subsystem.GATEWAY)
+                System.out.println("Taking commands after " + millis + " ms, still starting: " + missing());
+        } catch (RuntimeException e) {
+            // The subsystem stays unavailable, everything that does not need it keeps running
+            ready.get(subsystem).completeExceptionally(e);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Marks a subsystem ready after its phase gave up, like the steam catalog arriving on a later retry.
+     */
+    public void ready(Subsystem subsystem) {
+        long millis = uptimeMillis();
+        // Overriding a failed phase is the error recovery obtrudeValue is meant for
+        ready.get(subsystem).obtrudeValue(millis);
+        System.out.println(subsystem + " ready after " + millis + " ms");
+    }
+
+    public boolean isReady(Subsystem subsystem) {
+        CompletableFuture<Long> future = ready.get(subsystem);
+        return future.isDone() && !future.isCompletedExceptionally();
+    }
+
+    /**
+     * @return the first of the subsystems that is not ready, or null if they all are
+     */
+    public Subsystem firstMissing(Collection<Subsystem> required) {
+        for (Subsystem subsystem : required) {
+            if (!isReady(subsystem))
+                return subsystem;
+        }
+        return null;
+    }
+
+    public boolean hasFailed(Subsystem subsystem) {
+        return ready.get(subsystem).isCompletedExceptionally();
+    }
+
+    /**
+     * Records when the first command was served, later calls only cost a read.
+     */
+    public void commandServed(String name) {
+        if (commandServed.get() || !commandServed.compareAndSet(false, true))
+            return;
+        firstCommandMillis = uptimeMillis();
+        System.out.println("First command !" + name + " served after " + firstCommandMillis + " ms");
+    }
+
+    private String missing() {
+        StringBuilder missing = new StringBuilder();
+        for (Subsystem subsystem : Subsystem.values()) {
+            if (!isReady(subsystem))
+                missing.append(missing.length() == 0 ? "" : ", ").append(subsystem);
+        }
+        return missing.length() == 0 ? "nothing" : missing.toString();
+    }
+
+    private static long uptimeMillis() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+
+    @Override
+    public String reportMetrics() {
+        StringBuilder report = new StringBuilder("startup:");
+        for (Subsystem subsystem : Subsystem.values()) {
+            CompletableFuture<Long> future = ready.get(subsystem);
+            report.append('\n').append(subsystem).append(": ");
+            if (!future.isDone())
+                report.append("starting");
+            else if (future.isCompletedExceptionally())
+                report.append("failed");
+            else
+                report.append("ready after ").append(future.join()).append(" ms");
+        }
+        long firstCommand = firstCommandMillis;
+        report.append("\nfirst command: ").append(firstCommand < 0 ? "none yet" : "after " + firstCommand + " ms");
+        return report.toString();
+    }
+}
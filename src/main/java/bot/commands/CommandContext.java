@@ -0,0 +1,89 @@
+package bot.commands;
+
+import net.dv8tion.jda.core.entities.Guild;
+import net.dv8tion.jda.core.entities.MessageChannel;
+import net.dv8tion.jda.core.entities.TextChannel;
+import net.dv8tion.jda.core.entities.User;
+import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
+
+/**
+ * A command invocation with its arguments parsed once by the router.
+ */
+public class CommandContext {
+
+    private static final String[] NO_ARGUMENTS = new String[0];
+
+    private final MessageReceivedEvent event;
+    private final CommandRouter router;
+    private final String name;
+    private final String argument;
+    private String[] arguments;
+
+    CommandContext(MessageReceivedEvent event, CommandRouter router, String name, String argument) {
+        this.event = event;
+        this.router = router;
+        this.name = name;
+        this.argument = argument;
+    }
+
+    public MessageReceivedEvent getEvent() {
+        return event;
+    }
+
+    public CommandRouter getRouter() {
+        return router;
+    }
+
+    /**
+     * @return the command name without the leading !
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return everything after the command name, trimmed, empty if there is nothing
+     */
+    public String getArgument() {
+        return argument;
+    }
+
+    public boolean hasArgument() {
+        return !argument.isEmpty();
+    }
+
+    /**
+     * @return the argument split on whitespace, empty if there is no argument
+     */
+    public String[] getArguments() {
+        if (arguments == null)
+            arguments = argument.isEmpty() ? NO_ARGUMENTS : argument.split("\\s+");
+        return arguments;
+    }
+
+    public MessageChannel getChannel() {
+        return event.getChannel();
+    }
+
+    /**
+     * @return the text channel the command was sent in, null if it was not sent in a guild
+     */
+    public TextChannel getTextChannel() {
+        return event.getTextChannel();
+    }
+
+    /**
+     * @return the guild the command was sent in, null if it was not sent in a guild
+     */
+    public Guild getGuild() {
+        return event.getGuild();
+    }
+
+    public User getAuthor() {
+        return event.getAuthor();
+    }
+
+    public void reply(String message) {
+        event.getChannel().sendMessage(message).queue();
+    }
+}
@@ -0,0 +1,114 @@
+package bot.commands;
+
+import metrics.MetricsReporter;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs commands off the JDA event thread on a fixed set of single threaded stripes. Every guild is pinned to one
+ * stripe, so the commands of a guild run one at a time in the order they were sent, while different guilds mostly
+ * land on different stripes and run in parallel. A slow command only holds up the guilds sharing its stripe.
+ *
+ * Every stripe has a bounded queue. Commands that do not fit are rejected and counted instead of piling up.
+ */
+@Component
+public class CommandExecutor implements MetricsReporter, DisposableBean {
+
+    private final ThreadPoolExecutor[] stripes;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param stripeCount number of stripes, and so of commands that can run at the same time
+     * @param queueSize number of commands that can wait on each stripe
+     */
+    @Autowired
+    public CommandExecutor(@Value("${COMMAND_THREADS:8}") int stripeCount,
+                           @Value("${COMMAND_QUEUE_SIZE:64}") int queueSize) {
+        this.stripes = new ThreadPoolExecutor[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            String name = "commands-" + i;
+            stripes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueSize), runnable -> {
+                        Thread thread = new Thread(runnable, name);
+                        thread.setDaemon(true);
+                        return thread;
+                    }, new ThreadPoolExecutor.AbortPolicy());
+        }
+    }
+
+    /**
+     * Queues a task behind the earlier tasks with the same key.
+     *
+     * @param key guild, or channel outside of guilds, the task belongs to
+     * @param task the work
+     * @return false if the stripe of the key is full and the task was dropped
+     */
+    public boolean execute(long key, Runnable task) {
+        long queued = System.nanoTime();
+        try {
+            stripe(key).execute(() -> {
+                long waited = System.nanoTime() - queued;
+                waitNanos.add(waited);
+                maxWaitNanos.accumulate(waited);
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    // The stripe thread survives, the next command of the guild still runs
+                    e.printStackTrace();
+                }
+            });
+            submitted.increment();
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            return false;
+        }
+    }
+
+    private ThreadPoolExecutor stripe(long key) {
+        // Snowflakes of guilds created close together differ mostly in their high bits, the multiply spreads them
+        long mixed = key * 0x9E3779B97F4A7C15L;
+        return stripes[(int) ((mixed >>> 32) % stripes.length)];
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        for (ThreadPoolExecutor stripe : stripes) {
+            stripe.shutdown();
+        }
+        for (ThreadPoolExecutor stripe : stripes) {
+            stripe.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public String reportMetrics() {
+        int queued = 0;
+        int busy = 0;
+        int deepest = 0;
+        for (ThreadPoolExecutor stripe : stripes) {
+            int depth = stripe.getQueue().size();
+            queued += depth;
+            deepest = Math.max(deepest, depth);
+            busy += stripe.getActiveCount();
+        }
+        long count = submitted.sum();
+        return String.format("command executor: %d stripes, %d busy, %d queued, deepest queue %d%n"
+                        + "%d submitted, %d rejected, queue wait avg %.2f ms, max %.2f ms",
+                stripes.length, busy, queued, deepest, count, rejected.sum(),
+                count > 0 ? waitNanos.sum() / 1e6 / count : 0.0, maxWaitNanos.get() / 1e6);
+    }
+}
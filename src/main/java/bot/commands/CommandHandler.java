@@ -0,0 +1,36 @@
+package bot.commands;
+
+import bot.Startup.Subsystem;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * A chat command. Every component implementing this is registered with the {@link CommandRouter} under its name.
+ */
+public interface CommandHandler {
+
+    /**
+     * @return the name the command is invoked with, without the leading !
+     */
+    String getName();
+
+    /**
+     * @return the line describing the command in !help
+     */
+    String getHelp();
+
+    /**
+     * Runs the command.
+     *
+     * @param context the message that invoked the command and its parsed arguments
+     */
+    void handle(CommandContext context);
+
+    /**
+     * @return the subsystems the command needs, the router turns it away until they are all started
+     */
+    default Set<Subsystem> requires() {
+        return Collections.emptySet();
+    }
+}
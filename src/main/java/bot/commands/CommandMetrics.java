@@ -0,0 +1,63 @@
+package bot.commands;
+
+import metrics.MetricsReporter;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Invocation counts and latencies per command, recorded by the router around every dispatch.
+ */
+@Component
+public class CommandMetrics implements MetricsReporter {
+
+    private final Map<String, CommandStats> stats = new ConcurrentHashMap<>();
+    private final LongAdder unknownCommands = new LongAdder();
+
+    void record(String name, long nanos, boolean failed) {
+        CommandStats commandStats = stats.computeIfAbsent(name, key -> new CommandStats());
+        commandStats.invocations.increment();
+        commandStats.totalNanos.add(nanos);
+        commandStats.maxNanos.accumulate(nanos);
+        if (failed)
+            commandStats.failures.increment();
+    }
+
+    void recordUnknown() {
+        unknownCommands.increment();
+    }
+
+    public long getInvocations(String name) {
+        CommandStats commandStats = stats.get(name);
+        return commandStats != null ? commandStats.invocations.sum() : 0;
+    }
+
+    @Override
+    public String reportMetrics() {
+        StringBuilder report = new StringBuilder();
+        // Sorted so the busiest commands are easy to compare between two reports
+        for (Map.Entry<String, CommandStats> entry : new TreeMap<>(stats).entrySet()) {
+            CommandStats commandStats = entry.getValue();
+            long invocations = commandStats.invocations.sum();
+            long totalMillis = TimeUnit.NANOSECONDS.toMillis(commandStats.totalNanos.sum());
+            report.append(String.format("!%s: %d calls, %d failed, avg %.2f ms, max %.2f ms, total %d ms%n",
+                    entry.getKey(), invocations, commandStats.failures.sum(),
+                    invocations > 0 ? commandStats.totalNanos.sum() / 1e6 / invocations : 0.0,
+                    commandStats.maxNanos.get() / 1e6, totalMillis));
+        }
+        report.append("unknown commands: ").append(unknownCommands.sum());
+        return report.toString();
+    }
+
+    private static final class CommandStats {
+        private final LongAdder invocations = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    }
+}
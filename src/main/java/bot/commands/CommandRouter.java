@@ -0,0 +1,105 @@
+package bot.commands;
+
+import bot.Startup;
+import bot.Startup.Subsystem;
+import net.dv8tion.jda.core.entities.ChannelType;
+import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Looks up the handler of a command by name and runs it on the {@link CommandExecutor}, recording how often and how
+ * long every command runs. Commands whose subsystems are still starting are turned away with a note instead of queued.
+ */
+@Component
+public class CommandRouter {
+
+    private final Map<String, CommandHandler> handlers = new HashMap<>();
+    private final List<CommandHandler> sortedHandlers;
+    private final CommandMetrics metrics;
+    private final CommandExecutor executor;
+    private final Startup startup;
+
+    @Autowired
+    public CommandRouter(List<CommandHandler> handlers, CommandMetrics metrics, CommandExecutor executor,
+                         Startup startup) {
+        this.metrics = metrics;
+        this.executor = executor;
+        this.startup = startup;
+        for (CommandHandler handler : handlers) {
+            CommandHandler previous = this.handlers.put(handler.getName(), handler);
+            if (previous != null)
+                throw new IllegalStateException("Command !" + handler.getName() + " is registered twice");
+        }
+
+        List<CommandHandler> sorted = new ArrayList<>(handlers);
+        sorted.sort(Comparator.comparing(CommandHandler::getName));
+        this.sortedHandlers = Collections.unmodifiableList(sorted);
+    }
+
+    /**
+     * Queues the command in the message, if the message is one. The message content is expected to start with !.
+     * Only the command name is parsed on the calling thread, the command itself runs on the stripe of its guild.
+     *
+     * @param event the message received
+     */
+    public void dispatch(MessageReceivedEvent event) {
+
+        String content = event.getMessage().getContentRaw();
+
+        int nameEnd = content.indexOf(' ');
+        if (nameEnd < 0)
+            nameEnd = content.length();
+        String name = content.substring(1, nameEnd);
+
+        CommandHandler handler = handlers.get(name);
+        if (handler == null) {
+            metrics.recordUnknown();
+            return;
+        }
+
+        String argument = nameEnd < content.length() ? content.substring(nameEnd + 1).trim() : "";
+        CommandContext context = new CommandContext(event, this, name, argument);
+
+        Subsystem missing = startup.firstMissing(handler.requires());
+        if (missing != null) {
+            context.reply(startup.hasFailed(missing)
+                    ? "!" + name + " is unavailable, " + missing.getDescription() + " failed to start"
+                    : "!" + name + " is not available yet, " + missing.getDescription() + " is still starting");
+            return;
+        }
+
+        // Private messages have no guild, their channel keeps them in order instead
+        long key = event.isFromType(ChannelType.TEXT) ? event.getGuild().getIdLong() : event.getChannel().getIdLong();
+        if (!executor.execute(key, () -> run(handler, context)))
+            context.reply("Too many commands at once, try again in a moment");
+    }
+
+    private void run(CommandHandler handler, CommandContext context) {
+        String name = context.getName();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            handler.handle(context);
+            failed = false;
+        } finally {
+            metrics.record(name, System.nanoTime() - start, failed);
+        }
+        startup.commandServed(name);
+    }
+
+    /**
+     * @return every registered command, sorted by name
+     */
+    public Collection<CommandHandler> getHandlers() {
+        return sortedHandlers;
+    }
+}
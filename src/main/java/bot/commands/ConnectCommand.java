@@ -0,0 +1,34 @@
+package bot.commands;
+
+import bot.handlers.AudioHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+@Component
+public class ConnectCommand implements CommandHandler {
+
+    private final AudioHandler audioHandler;
+
+    @Autowired
+    public ConnectCommand(AudioHandler audioHandler) {
+        this.audioHandler = audioHandler;
+    }
+
+    @Override
+    public String getName() {
+        return "connect";
+    }
+
+    @Override
+    public String getHelp() {
+        return "!connect [channel name] - bot will either join the channel given, the user's channel or the first channel in the guild";
+    }
+
+    @Override
+    public void handle(CommandContext context) {
+        if(!context.hasArgument())
+            audioHandler.connectToVoiceChannel(context.getAuthor(), context.getGuild());
+        else
+            audioHandler.connectToVoiceChannel(context.getArgument(), context.getGuild());
+    }
+}
@@ -0,0 +1,27 @@
+package bot.commands;
+
+import org.springframework.stereotype.Component;
+
+@Component
+public class HelpCommand implements CommandHandler {
+
+    @Override
+    public String getName() {
+        return "help";
+    }
+
+    @Override
+    public String getHelp() {
+        return "!help - bot will write out this list";
+    }
+
+    @Override
+    public void handle(CommandContext context) {
+
+        StringBuilder help = new StringBuilder();
+        for (CommandHandler handler : context.getRouter().getHandlers()) {
+            help.append(handler.getHelp()).append('\n');
+        }
+        context.reply(help.toString());
+    }
+}
@@ -0,0 +1,40 @@
+package bot.commands;
+
+import bot.Startup.Subsystem;
+import bot.handlers.AudioHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+@Component
+public class LeaveCommand implements CommandHandler {
+
+    private final AudioHandler audioHandler;
+
+    @Autowired
+    public LeaveCommand(AudioHandler audioHandler) {
+        this.audioHandler = audioHandler;
+    }
+
+    @Override
+    public String getName() {
+        return "leave";
+    }
+
+    @Override
+    public String getHelp() {
+        return "!leave - bot will leave any audio channel and pause any audio playing";
+    }
+
+    @Override
+    public Set<Subsystem> requires() {
+        return EnumSet.of(Subsystem.AUDIO);
+    }
+
+    @Override
+    public void handle(CommandContext context) {
+        audioHandler.leaveVoiceChannel(context.getGuild());
+    }
+}
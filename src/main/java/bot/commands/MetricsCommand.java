@@ -0,0 +1,65 @@
+package bot.commands;
+
+import metrics.MetricsReporter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+public class MetricsCommand implements CommandHandler {
+
+    // Discord rejects longer messages, every page is a code block of whole lines
+    private static final int MESSAGE_LIMIT = 2000;
+    private static final int PAGE_LIMIT = MESSAGE_LIMIT - "```\n\n```".length();
+
+    private final List<MetricsReporter> reporters;
+
+    @Autowired
+    public MetricsCommand(List<MetricsReporter> reporters) {
+        this.reporters = reporters;
+    }
+
+    @Override
+    public String getName() {
+        return "metrics";
+    }
+
+    @Override
+    public String getHelp() {
+        return "!metrics - bot will write out its runtime metrics";
+    }
+
+    /**
+     * Writes all reports in as few messages as fit, a blank line between two reports.
+     */
+    @Override
+    public void handle(CommandContext context) {
+
+        StringBuilder report = new StringBuilder();
+        for (MetricsReporter reporter : reporters) {
+            report.append(report.length() == 0 ? "" : "\n\n").append(reporter.reportMetrics());
+        }
+
+        StringBuilder page = new StringBuilder();
+        for (String line : report.toString().split("\n")) {
+            if (page.length() > 0 && page.length() + 1 + line.length() > PAGE_LIMIT) {
+                sendPage(context, page);
+            }
+            // A single line too long for a page is cut
+            while (line.length() > PAGE_LIMIT) {
+                page.append(line, 0, PAGE_LIMIT);
+                sendPage(context, page);
+                line = line.substring(PAGE_LIMIT);
+            }
+            page.append(page.length() == 0 ? "" : "\n").append(line);
+        }
+        if (page.length() > 0)
+            sendPage(context, page);
+    }
+
+    private static void sendPage(CommandContext context, StringBuilder page) {
+        context.reply("```\n" + page + "\n```");
+        page.setLength(0);
+    }
+}
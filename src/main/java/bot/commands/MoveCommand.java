@@ -0,0 +1,51 @@
+package bot.commands;
+
+import bot.Startup.Subsystem;
+import bot.handlers.AudioHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+@Component
+public class MoveCommand implements CommandHandler {
+
+    private final AudioHandler audioHandler;
+
+    @Autowired
+    public MoveCommand(AudioHandler audioHandler) {
+        this.audioHandler = audioHandler;
+    }
+
+    @Override
+    public String getName() {
+        return "move";
+    }
+
+    @Override
+    public String getHelp() {
+        return "!move [from] [to] - bot will move the track at one position in !queue to another";
+    }
+
+    @Override
+    public Set<Subsystem> requires() {
+        return EnumSet.of(Subsystem.AUDIO);
+    }
+
+    @Override
+    public void handle(CommandContext context) {
+        String[] arguments = context.getArguments();
+        if(arguments.length != 2 || !arguments[0].matches("[1-9][0-9]{0,8}") || !arguments[1].matches("[1-9][0-9]{0,8}")) {
+            context.reply("Usage: !move [from] [to]");
+            return;
+        }
+
+        int to = Integer.parseInt(arguments[1]);
+        String moved = audioHandler.moveTrack(context.getGuild(), Integer.parseInt(arguments[0]), to);
+        if(moved == null)
+            context.reply("Both positions have to be in the queue");
+        else
+            context.reply("Moved " + moved + " to position " + to);
+    }
+}
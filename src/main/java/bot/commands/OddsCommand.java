@@ -0,0 +1,118 @@
+package bot.commands;
+
+import dice.DiceCompiler;
+import dice.DiceExpression;
+import dice.DiceFormatException;
+import dice.DiceOdds;
+import dice.Distribution;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+@Component
+public class OddsCommand implements CommandHandler {
+
+    private static final Pattern COMPARISON = Pattern.compile("(.*?)(>=|<=|=|>|<)\\s*(-?\\d{1,18})");
+    // Distributions with at most this many results are listed in full
+    private static final int LISTED_OUTCOMES = 16;
+
+    private final DiceCompiler diceCompiler;
+    private final DiceOdds diceOdds;
+
+    @Autowired
+    public OddsCommand(DiceCompiler diceCompiler, DiceOdds diceOdds) {
+        this.diceCompiler = diceCompiler;
+        this.diceOdds = diceOdds;
+    }
+
+    @Override
+    public String getName() {
+        return "odds";
+    }
+
+    @Override
+    public String getHelp() {
+        return "!odds [dice] [>=, <=, =, >, < number] - bot will tell the odds of a roll, e.g. 10d6+3 >= 40, 20d10#7";
+    }
+
+    @Override
+    public void handle(CommandContext context) {
+
+        String text = context.getArgument();
+        String comparison = null;
+        long value = 0;
+        Matcher matcher = COMPARISON.matcher(text);
+        if(matcher.matches()) {
+            text = matcher.group(1).trim();
+            comparison = matcher.group(2);
+            value = Long.parseLong(matcher.group(3));
+        }
+
+        Distribution distribution;
+        DiceExpression expression;
+        try {
+            expression = diceCompiler.compile(text);
+            distribution = diceOdds.distribution(expression);
+        } catch (DiceFormatException e) {
+            context.reply("Invalid format, " + e.getMessage() + ". Usage: " + getHelp());
+            return;
+        } catch (IllegalArgumentException e) {
+            context.reply("Can not work out the odds of " + text + ", " + e.getMessage());
+            return;
+        }
+
+        String outcome = expression.isSuccessCount() ? "successes" : "total";
+        if(comparison != null)
+            context.reply(String.format("P(%s %s %d) = %s", outcome, comparison, value,
+                    percent(probability(distribution, comparison, value))));
+        else
+            context.reply(describe(expression, distribution, outcome));
+    }
+
+    private static double probability(Distribution distribution, String comparison, long value) {
+        switch (comparison) {
+            case ">=":
+                return distribution.probabilityAtLeast(value);
+            case ">":
+                return value == Long.MAX_VALUE ? 0 : distribution.probabilityAtLeast(value + 1);
+            case "<=":
+                return distribution.probabilityAtMost(value);
+            case "<":
+                return value == Long.MIN_VALUE ? 0 : distribution.probabilityAtMost(value - 1);
+            default:
+                return distribution.probability(value);
+        }
+    }
+
+    private String describe(DiceExpression expression, Distribution distribution, String outcome) {
+
+        StringBuilder retMessage = new StringBuilder(expression.getText()).append('\n');
+        retMessage.append(String.format("%s from %d to %d, mean %.2f, standard deviation %.2f, most likely %d%n",
+                outcome, distribution.getMinimum(), distribution.getMaximum(), distribution.getMean(),
+                distribution.getStandardDeviation(), distribution.getMostLikely()));
+
+        if(distribution.size() <= LISTED_OUTCOMES) {
+            for(long value = distribution.getMinimum(); value <= distribution.getMaximum(); value++) {
+                retMessage.append(String.format("%d: %s, at least %s%n", value,
+                        percent(distribution.probability(value)), percent(distribution.probabilityAtLeast(value))));
+            }
+        } else {
+            retMessage.append(String.format("half of all rolls are between %d and %d, 90%% between %d and %d",
+                    distribution.quantile(0.25), distribution.quantile(0.75),
+                    distribution.quantile(0.05), distribution.quantile(0.95)));
+        }
+        return retMessage.toString().trim();
+    }
+
+    private static String percent(double probability) {
+        if(probability == 0)
+            return "0%";
+        if(probability >= 1)
+            return "100%";
+        if(probability < 0.0001)
+            return String.format("%.2e%%", probability * 100);
+        return String.format("%.2f%%", probability * 100);
+    }
+}
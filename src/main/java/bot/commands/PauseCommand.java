@@ -0,0 +1,40 @@
+package bot.commands;
+
+import bot.Startup.Subsystem;
+import bot.handlers.AudioHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+@Component
+public class PauseCommand implements CommandHandler {
+
+    private final AudioHandler audioHandler;
+
+    @Autowired
+    public PauseCommand(AudioHandler audioHandler) {
+        this.audioHandler = audioHandler;
+    }
+
+    @Override
+    public String getName() {
+        return "pause";
+    }
+
+    @Override
+    public String getHelp() {
+        return "!pause - bot will pause/unpause itself";
+    }
+
+    @Override
+    public Set<Subsystem> requires() {
+        return EnumSet.of(Subsystem.AUDIO);
+    }
+
+    @Override
+    public void handle(CommandContext context) {
+        audioHandler.pause(context.getGuild());
+    }
+}
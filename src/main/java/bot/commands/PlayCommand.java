@@ -0,0 +1,45 @@
+package bot.commands;
+
+import bot.Startup.Subsystem;
+import bot.handlers.AudioHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+@Component
+public class PlayCommand implements CommandHandler {
+
+    private final AudioHandler audioHandler;
+
+    @Autowired
+    public PlayCommand(AudioHandler audioHandler) {
+        this.audioHandler = audioHandler;
+    }
+
+    @Override
+    public String getName() {
+        return "play";
+    }
+
+    @Override
+    public String getHelp() {
+        return "!play [url] - bot will add the given track to the queue";
+    }
+
+    @Override
+    public Set<Subsystem> requires() {
+        return EnumSet.of(Subsystem.AUDIO);
+    }
+
+    @Override
+    public void handle(CommandContext context) {
+        if(!context.hasArgument()) {
+            context.reply("Usage: !play [url]");
+            return;
+        }
+
+        audioHandler.loadAndPlay(context.getTextChannel(), context.getArgument());
+    }
+}
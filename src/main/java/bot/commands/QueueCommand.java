@@ -0,0 +1,46 @@
+package bot.commands;
+
+import bot.Startup.Subsystem;
+import bot.handlers.AudioHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+@Component
+public class QueueCommand implements CommandHandler {
+
+    private final AudioHandler audioHandler;
+
+    @Autowired
+    public QueueCommand(AudioHandler audioHandler) {
+        this.audioHandler = audioHandler;
+    }
+
+    @Override
+    public String getName() {
+        return "queue";
+    }
+
+    @Override
+    public String getHelp() {
+        return "!queue [page] - bot will write out a page of the queued tracks";
+    }
+
+    @Override
+    public Set<Subsystem> requires() {
+        return EnumSet.of(Subsystem.AUDIO);
+    }
+
+    @Override
+    public void handle(CommandContext context) {
+        int page = context.getArgument().matches("[1-9][0-9]{0,8}") ? Integer.parseInt(context.getArgument()) : 1;
+        String queuedTracks = audioHandler.queuePage(context.getGuild(), page);
+
+        if(queuedTracks.isEmpty())
+            context.reply("The track queue is empty!");
+        else
+            context.reply(queuedTracks);
+    }
+}
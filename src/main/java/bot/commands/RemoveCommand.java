@@ -0,0 +1,49 @@
+package bot.commands;
+
+import bot.Startup.Subsystem;
+import bot.handlers.AudioHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+@Component
+public class RemoveCommand implements CommandHandler {
+
+    private final AudioHandler audioHandler;
+
+    @Autowired
+    public RemoveCommand(AudioHandler audioHandler) {
+        this.audioHandler = audioHandler;
+    }
+
+    @Override
+    public String getName() {
+        return "remove";
+    }
+
+    @Override
+    public String getHelp() {
+        return "!remove [position] - bot will remove the track at the position in !queue";
+    }
+
+    @Override
+    public Set<Subsystem> requires() {
+        return EnumSet.of(Subsystem.AUDIO);
+    }
+
+    @Override
+    public void handle(CommandContext context) {
+        if(!context.getArgument().matches("[1-9][0-9]{0,8}")) {
+            context.reply("Usage: !remove [position]");
+            return;
+        }
+
+        String removed = audioHandler.removeTrack(context.getGuild(), Integer.parseInt(context.getArgument()));
+        if(removed == null)
+            context.reply("There is no track at position " + context.getArgument());
+        else
+            context.reply("Removed " + removed + " from the queue");
+    }
+}
@@ -0,0 +1,198 @@
+package bot.commands;
+
+import dice.DiceCompiler;
+import dice.DiceExpression;
+import dice.DiceFormatException;
+import dice.DiceRoll;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import random.Random;
+
+@Component
+public class RollCommand implements CommandHandler {
+
+    private static final ThreadLocal<DiceRoll> ROLLS = ThreadLocal.withInitial(DiceRoll::new);
+
+    // Discord rejects longer messages, rolls whose dice do not fit are summarized instead
+    private static final int MESSAGE_LIMIT = 2000;
+    private static final int HISTOGRAM_MAX_SIDES = 20;
+
+    private final Random random;
+    private final DiceCompiler diceCompiler;
+
+    @Autowired
+    public RollCommand(Random random, DiceCompiler diceCompiler) {
+        this.random = random;
+        this.diceCompiler = diceCompiler;
+    }
+
+    @Override
+    public String getName() {
+        return "roll";
+    }
+
+    @Override
+    public String getHelp() {
+        return "!roll [dice] - bot will roll the given dices for you, e.g. 2d6+3, 4d6kh3, 2d20kl1, 3d6!, 10d10#7";
+    }
+
+    @Override
+    public void handle(CommandContext context) {
+
+        DiceExpression expression;
+        try {
+            expression = diceCompiler.compile(context.getArgument());
+        } catch (DiceFormatException e) {
+            context.reply("Invalid format, " + e.getMessage() + ". Valid format [1-999]d[sides], combined with +/-, "
+                    + "kh/kl/dh/dl[number] to keep or drop dice, ! to explode or #[target] to count successes");
+            return;
+        }
+
+        DiceRoll roll = ROLLS.get();
+        expression.roll(random, roll);
+
+        if(detailedLength(roll) <= MESSAGE_LIMIT)
+            context.reply(describe(roll));
+        else
+            context.reply(summarize(roll));
+    }
+
+    /**
+     * Upper bound of the length of the per die description, counted without building it.
+     */
+    private int detailedLength(DiceRoll roll){
+
+        int length = 64;
+        for(int term = 0; term < roll.getTermCount(); term++) {
+            length += 8;
+            for(int die = roll.termStart(term); die < roll.termEnd(term); die++) {
+                length += digits(roll.value(die)) + 2;
+                if(!roll.isKept(die) || roll.isSuccess(die))
+                    length += 4;
+            }
+            if(length > MESSAGE_LIMIT)
+                return length;
+        }
+        return length;
+    }
+
+    private static int digits(int value){
+        int digits = 1;
+        while(value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    private String describe(DiceRoll roll){
+
+        DiceExpression expression = roll.getExpression();
+        StringBuilder retMessage = new StringBuilder();
+
+        for(int term = 0; term < roll.getTermCount(); term++) {
+            if(term > 0)
+                retMessage.append(expression.isNegative(term) ? " - " : " + ");
+
+            retMessage.append("[ ");
+            for(int die = roll.termStart(term); die < roll.termEnd(term); die++) {
+                if(die > roll.termStart(term))
+                    retMessage.append(", ");
+
+                if(!roll.isKept(die))
+                    retMessage.append("~~").append(roll.value(die)).append("~~");
+                else if(roll.isSuccess(die))
+                    retMessage.append("**").append(roll.value(die)).append("**");
+                else
+                    retMessage.append(roll.value(die));
+            }
+            retMessage.append(" ]");
+        }
+
+        long modifier = expression.getModifier();
+        if(modifier != 0)
+            retMessage.append(modifier > 0 ? " + " : " - ").append(Math.abs(modifier));
+
+        retMessage.append('\n');
+        if(expression.isSuccessCount())
+            retMessage.append("total successes: ").append(roll.getSuccesses());
+        else
+            retMessage.append("total: ").append(roll.getTotal());
+
+        return retMessage.toString();
+    }
+
+    /**
+     * Describes every term by a histogram of its faces, or its range and mean for dice with many sides, instead of
+     * listing every die. Terms that do not fit in a message are left out, the total is always included.
+     */
+    private String summarize(DiceRoll roll){
+
+        DiceExpression expression = roll.getExpression();
+        StringBuilder footer = new StringBuilder();
+        long modifier = expression.getModifier();
+        if(modifier != 0)
+            footer.append(modifier > 0 ? "+ " : "- ").append(Math.abs(modifier)).append('\n');
+
+        if(expression.isSuccessCount())
+            footer.append("total successes: ").append(roll.getSuccesses());
+        else
+            footer.append("total: ").append(roll.getTotal());
+
+        StringBuilder retMessage = new StringBuilder();
+        StringBuilder line = new StringBuilder();
+        int[] histogram = new int[HISTOGRAM_MAX_SIDES];
+
+        for(int term = 0; term < roll.getTermCount(); term++) {
+            int sides = expression.getSides(term);
+            int rolled = roll.termEnd(term) - roll.termStart(term);
+
+            line.setLength(0);
+            line.append(expression.isNegative(term) ? "- " : term > 0 ? "+ " : "")
+                    .append(expression.getCount(term)).append('d').append(sides);
+            if(rolled > expression.getCount(term))
+                line.append(" (").append(rolled - expression.getCount(term)).append(" exploded)");
+            line.append(": ");
+
+            int kept = 0;
+            long sum = 0;
+            int lowest = Integer.MAX_VALUE;
+            int highest = 0;
+            for(int die = roll.termStart(term); die < roll.termEnd(term); die++) {
+                if(!roll.isKept(die))
+                    continue;
+                kept++;
+                sum += roll.value(die);
+                lowest = Math.min(lowest, roll.value(die));
+                highest = Math.max(highest, roll.value(die));
+            }
+
+            if(kept == 0) {
+                line.append("no dice kept");
+            } else if(sides <= HISTOGRAM_MAX_SIDES) {
+                roll.histogram(term, histogram);
+                for(int face = 1; face <= sides; face++) {
+                    if(face > 1)
+                        line.append(", ");
+                    line.append(face).append('\u00d7').append(histogram[face - 1]);
+                }
+            } else {
+                line.append("lowest ").append(lowest)
+                        .append(", highest ").append(highest)
+                        .append(", mean ").append(String.format("%.2f", (double) sum / kept));
+            }
+            if(kept < rolled)
+                line.append(" (").append(rolled - kept).append(" dropped)");
+            line.append('\n');
+
+            // Keep room for the line that marks the left out terms
+            if(retMessage.length() + line.length() + footer.length() + 2 > MESSAGE_LIMIT) {
+                retMessage.append("\u2026\n");
+                break;
+            }
+            retMessage.append(line);
+        }
+
+        return retMessage.append(footer).toString();
+    }
+}
@@ -0,0 +1,44 @@
+package bot.commands;
+
+import bot.Startup.Subsystem;
+import bot.handlers.AudioHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+@Component
+public class ShuffleCommand implements CommandHandler {
+
+    private final AudioHandler audioHandler;
+
+    @Autowired
+    public ShuffleCommand(AudioHandler audioHandler) {
+        this.audioHandler = audioHandler;
+    }
+
+    @Override
+    public String getName() {
+        return "shuffle";
+    }
+
+    @Override
+    public String getHelp() {
+        return "!shuffle - bot will shuffle the queued tracks";
+    }
+
+    @Override
+    public Set<Subsystem> requires() {
+        return EnumSet.of(Subsystem.AUDIO);
+    }
+
+    @Override
+    public void handle(CommandContext context) {
+        int shuffled = audioHandler.shuffle(context.getGuild());
+        if(shuffled == 0)
+            context.reply("The track queue is empty!");
+        else
+            context.reply("Shuffled " + shuffled + " tracks");
+    }
+}
@@ -0,0 +1,91 @@
+package bot.commands;
+
+import journal.DieStatistics;
+import journal.RollStatistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+@Component
+public class StatsCommand implements CommandHandler {
+
+    // Below this p-value the die is called out, it is rare enough that a fair die will hardly ever trigger it
+    private static final double BIAS_P_VALUE = 0.001;
+
+    private final RollStatistics rollStatistics;
+
+    @Autowired
+    public StatsCommand(RollStatistics rollStatistics) {
+        this.rollStatistics = rollStatistics;
+    }
+
+    @Override
+    public String getName() {
+        return "stats";
+    }
+
+    @Override
+    public String getHelp() {
+        return "!stats d[sides] - bot will tell how fair its rolls of that die have been, e.g. !stats d20";
+    }
+
+    @Override
+    public void handle(CommandContext context) {
+
+        String argument = context.getArgument();
+        if(argument.startsWith("d") || argument.startsWith("D"))
+            argument = argument.substring(1);
+        if(!argument.matches("[1-9][0-9]{0,8}")) {
+            context.reply("Usage: !stats d[sides], e.g. !stats d6");
+            return;
+        }
+
+        DieStatistics statistics;
+        try {
+            statistics = rollStatistics.get(Integer.parseInt(argument));
+        } catch (IOException e) {
+            e.printStackTrace();
+            context.reply("Could not read the rolls of d" + argument);
+            return;
+        }
+        context.reply(describe(statistics));
+    }
+
+    private String describe(DieStatistics statistics){
+
+        int sides = statistics.getSides();
+        StringBuilder retMessage = new StringBuilder();
+        retMessage.append('d').append(sides).append(": ").append(statistics.getRolls()).append(" rolls");
+        if(statistics.getRolls() == 0)
+            return retMessage.toString();
+
+        retMessage.append(String.format("%nmean %.3f, a fair die averages %.3f", statistics.getMean(),
+                statistics.getFairMean()));
+
+        // Snapshots only carry the face counts of dice up to RollStatistics.LISTED_FACES sides
+        if(statistics.hasFaceCountList()) {
+            retMessage.append('\n');
+            for(int face = 1; face <= sides; face++) {
+                if(face > 1)
+                    retMessage.append(", ");
+                retMessage.append(face).append('\u00d7').append(statistics.getFaceCount(face));
+            }
+        }
+
+        if(sides == 1 || !statistics.hasFaceCounts())
+            return retMessage.toString();
+
+        double pValue = statistics.getPValue();
+        retMessage.append(String.format("%nchi-square %.2f with %d degrees of freedom, p = %.4f",
+                statistics.getChiSquare(), statistics.getDegreesOfFreedom(), pValue));
+        if(!statistics.hasEnoughRolls())
+            retMessage.append("\nnot enough rolls yet to judge the die");
+        else if(pValue < BIAS_P_VALUE)
+            retMessage.append("\nthis die looks biased");
+        else
+            retMessage.append("\nno sign of bias");
+
+        return retMessage.toString();
+    }
+}
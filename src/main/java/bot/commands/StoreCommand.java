@@ -0,0 +1,61 @@
+package bot.commands;
+
+import bot.Startup.Subsystem;
+import bot.handlers.SteamStoreHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+@Component
+public class StoreCommand implements CommandHandler {
+
+    private static final int STORE_RESULT_LIMIT = 5;
+
+    private final SteamStoreHandler steamStoreHandler;
+
+    @Autowired
+    public StoreCommand(SteamStoreHandler steamStoreHandler) {
+        this.steamStoreHandler = steamStoreHandler;
+    }
+
+    @Override
+    public String getName() {
+        return "store";
+    }
+
+    @Override
+    public String getHelp() {
+        return "!store [app name] - bot will search the steam store for the closest name matches and list them, "
+                + "put the name in quotes to only list apps whose name contains it exactly";
+    }
+
+    @Override
+    public Set<Subsystem> requires() {
+        return EnumSet.of(Subsystem.STEAM_CATALOG);
+    }
+
+    @Override
+    public void handle(CommandContext context) {
+        if(!context.hasArgument())
+            return;
+
+        String name = context.getArgument().toLowerCase();
+        // Ask for a few extra matches since some of them may turn out to be delisted
+        List<String> appIDs;
+        if(name.length() > 2 && name.startsWith("\"") && name.endsWith("\"")) {
+            appIDs = steamStoreHandler.getAppIDs(name.substring(1, name.length() - 1));
+            appIDs = appIDs.subList(0, Math.min(appIDs.size(), STORE_RESULT_LIMIT * 2));
+        } else
+            appIDs = steamStoreHandler.getRankedAppIDs(name, STORE_RESULT_LIMIT * 2);
+
+        if(appIDs.isEmpty())
+            return;
+
+        steamStoreHandler.listedStoreUrls(appIDs).stream()
+                .limit(STORE_RESULT_LIMIT)
+                .forEach(context::reply);
+    }
+}
@@ -0,0 +1,45 @@
+package bot.commands;
+
+import bot.Startup.Subsystem;
+import bot.handlers.AudioHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+@Component
+public class VolumeCommand implements CommandHandler {
+
+    private final AudioHandler audioHandler;
+
+    @Autowired
+    public VolumeCommand(AudioHandler audioHandler) {
+        this.audioHandler = audioHandler;
+    }
+
+    @Override
+    public String getName() {
+        return "volume";
+    }
+
+    @Override
+    public String getHelp() {
+        return "!volume [0-99] - will set the bot volume";
+    }
+
+    @Override
+    public Set<Subsystem> requires() {
+        return EnumSet.of(Subsystem.AUDIO);
+    }
+
+    @Override
+    public void handle(CommandContext context) {
+        if(context.getArgument().matches("[1-9]?[0-9]")) {
+            audioHandler.setVolume(context.getGuild(), Integer.parseInt(context.getArgument()));
+        }
+        else {
+            context.reply("Current volume is: " + audioHandler.getVolume(context.getGuild()));
+        }
+    }
+}
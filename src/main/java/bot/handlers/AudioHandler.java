@@ -1,7 +1,12 @@
 package bot.handlers;
 
+import audio.FrameStatistics;
 import audio.GuildMusicManager;
-import audio.TrackScheduler;
+import audio.QueueStore;
+import audio.TrackCache;
+import audio.TrackCodec;
+import bot.Bottinator;
+import bot.Startup;
 import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
@@ -10,40 +15,215 @@ import com.sedmelluq.discord.lavaplayer.source.AudioSourceManagers;
 import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
 import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.playback.NonAllocatingAudioFrameBuffer;
 import net.dv8tion.jda.core.entities.*;
+import metrics.MetricsReporter;
 import net.dv8tion.jda.core.managers.AudioManager;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 @Component
-public class AudioHandler {
+public class AudioHandler implements MetricsReporter, DisposableBean {
 
     private final AudioPlayerManager playerManager;
-    private final Map<Long, GuildMusicManager> musicManagers;
-
-    public AudioHandler(){
-        this.musicManagers = new HashMap<>();
+    // One map per shard, indexed by shard id, so every shard's guilds are looked up, evicted and counted on their own
+    private final List<ConcurrentMap<Long, GuildMusicManager>> musicManagers;
+    private final Set<Integer> shardIds;
+    private final long idleNanos;
+    private final FrameStatistics frameStatistics = new FrameStatistics();
+    private final TrackCodec trackCodec;
+    private final TrackCache trackCache;
+    private final QueueStore queueStore;
+
+    private final LongAdder created = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    /**
+     * @param idleMinutes how long a guild's player is kept after its last use while nothing is playing, 0 to keep
+     *                    players forever
+     * @param trackCacheSize resolved identifiers kept in memory
+     * @param trackCacheMinutes how long a resolved identifier is played from the cache
+     * @param trackCacheDirectory where resolved identifiers are also kept between runs, empty to keep them in memory only
+     * @param queueDirectory where the queues are kept between runs, empty to not keep them
+     * @param checkpointSeconds how often the position in the playing tracks is written to the queues
+     * @param shardCount how many shards the bot's guilds are spread over in total
+     * @param shardIds the shards this process runs, only their stored queues are restored
+     * @param startup registers the audio startup phase, which sets up the sources and restores the queues
+     */
+    @Autowired
+    public AudioHandler(@Value("${AUDIO_IDLE_MINUTES:30}") long idleMinutes,
+                        @Value("${TRACK_CACHE_SIZE:512}") int trackCacheSize,
+                        @Value("${TRACK_CACHE_MINUTES:360}") long trackCacheMinutes,
+                        @Value("${TRACK_CACHE_DIR:}") String trackCacheDirectory,
+                        @Value("${QUEUE_DIR:./queues}") String queueDirectory,
+                        @Value("${QUEUE_CHECKPOINT_SECONDS:10}") long checkpointSeconds,
+                        @Value("${SHARD_COUNT:1}") int shardCount,
+                        @Value("${SHARD_IDS:}") String shardIds,
+                        Startup startup){
+        this.musicManagers = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            musicManagers.add(new ConcurrentHashMap<>());
+        }
+        this.shardIds = new HashSet<>(Bottinator.parseShardIds(shardIds, shardCount));
+        this.idleNanos = TimeUnit.MINUTES.toNanos(idleMinutes);
 
         this.playerManager = new DefaultAudioPlayerManager();
+        // Frames are copied into the send handler's own buffer, so the player does not need to allocate one per frame
+        playerManager.getConfiguration().setFrameBufferFactory(NonAllocatingAudioFrameBuffer::new);
+        this.trackCodec = new TrackCodec(playerManager);
+        this.trackCache = new TrackCache(trackCacheSize, TimeUnit.MINUTES.toMillis(trackCacheMinutes),
+                trackCacheDirectory.isEmpty() ? null : Paths.get(trackCacheDirectory));
+
+        this.queueStore = new QueueStore(queueDirectory.isEmpty() ? null : Paths.get(queueDirectory), trackCodec);
+
+        // Nothing loads or plays before the phase is done, the music commands wait for it
+        startup.register(Startup.Subsystem.AUDIO, () -> start(idleMinutes, checkpointSeconds));
+    }
+
+    private void start(long idleMinutes, long checkpointSeconds) {
         AudioSourceManagers.registerRemoteSources(playerManager);
         AudioSourceManagers.registerLocalSource(playerManager);
+        restoreQueues();
+
+        ScheduledExecutorService maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "audio-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (idleMinutes > 0) {
+            long period = Math.max(1, Math.min(60, TimeUnit.MINUTES.toSeconds(idleMinutes) / 4));
+            maintenance.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.SECONDS);
+        }
+        if (queueStore.isEnabled() && checkpointSeconds > 0)
+            maintenance.scheduleWithFixedDelay(this::checkpointPositions, checkpointSeconds, checkpointSeconds,
+                    TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return the music manager of the guild, created with its send handler installed on first use
+     */
+    public GuildMusicManager getGuildAudioPlayer(Guild guild) {
+        long guildId = guild.getIdLong();
+        ConcurrentMap<Long, GuildMusicManager> shard = musicManagers(guildId);
+        while (true) {
+            GuildMusicManager musicManager = shard.get(guildId);
+            if (musicManager == null) {
+                // Restoring waits on the queue store and decodes tracks, so it runs outside the map where it holds
+                // no lock. Two lookups racing both build a manager, the one that is not put in the map is dropped.
+                GuildMusicManager restored = createMusicManager(guildId, queueStore.restore(guildId));
+                musicManager = shard.putIfAbsent(guildId, restored);
+                if (musicManager == null) {
+                    created.increment();
+                    musicManager = restored;
+                } else {
+                    restored.destroy();
+                }
+            }
+
+            // A manager retired by the evictor is on its way out of the map, the next lookup creates a new one
+            if (!musicManager.touch())
+                continue;
+
+            // Managers restored at startup exist before their guild is known, so the handler is installed here
+            if (musicManager.claimSendHandlerInstall())
+                guild.getAudioManager().setSendingHandler(musicManager.getSendHandler());
+            return musicManager;
+        }
     }
 
-    public synchronized GuildMusicManager getGuildAudioPlayer(Guild guild) {
-        long guildId = Long.parseLong(guild.getId());
-        GuildMusicManager musicManager = musicManagers.get(guildId);
+    /**
+     * @return the players of the guild's shard, the shard is the one Discord puts the guild on
+     */
+    private ConcurrentMap<Long, GuildMusicManager> musicManagers(long guildId) {
+        return musicManagers.get(shardOf(guildId));
+    }
 
-        if (musicManager == null) {
-            musicManager = new GuildMusicManager(playerManager);
-            musicManagers.put(guildId, musicManager);
+    private int shardOf(long guildId) {
+        return (int) ((guildId >>> 22) % musicManagers.size());
+    }
+
+    private GuildMusicManager createMusicManager(long guildId, QueueStore.QueueState state) {
+        GuildMusicManager manager = new GuildMusicManager(playerManager, frameStatistics, queueStore, trackCodec,
+                guildId);
+        if (!state.isEmpty()) {
+            manager.scheduler.restore(queueStore.decode(state.getCurrent()), state.getPosition(),
+                    state.getQueued());
         }
+        return manager;
+    }
+
+    /**
+     * Reads and decodes the stored queue of every guild on this process's shards in parallel, the current tracks wait
+     * paused where they were.
+     */
+    private void restoreQueues() {
+        Map<Long, QueueStore.QueueState> states = queueStore.restoreAll();
+        states.keySet().removeIf(guildId -> !shardIds.contains(shardOf(guildId)));
+        states.entrySet().parallelStream().forEach(entry -> musicManagers(entry.getKey())
+                .put(entry.getKey(), createMusicManager(entry.getKey(), entry.getValue())));
+        created.add(states.size());
+        if (!states.isEmpty())
+            System.out.println("Restored the queues of " + states.size() + " guilds");
+    }
 
-        guild.getAudioManager().setSendingHandler(musicManager.getSendHandler());
+    private void evictIdle() {
+        for (ConcurrentMap<Long, GuildMusicManager> shard : musicManagers) {
+            evictIdle(shard);
+        }
+    }
 
-        return musicManager;
+    private void evictIdle(ConcurrentMap<Long, GuildMusicManager> shard) {
+        for (Long guildId : shard.keySet()) {
+            shard.computeIfPresent(guildId, (id, musicManager) -> {
+                if (!musicManager.retireIfIdle(idleNanos))
+                    return musicManager;
+                checkpointPosition(id, musicManager);
+                queueStore.release(id);
+                musicManager.destroy();
+                evicted.increment();
+                return null;
+            });
+        }
+    }
+
+    private void checkpointPositions() {
+        for (ConcurrentMap<Long, GuildMusicManager> shard : musicManagers) {
+            for (Map.Entry<Long, GuildMusicManager> entry : shard.entrySet()) {
+                checkpointPosition(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void checkpointPosition(long guildId, GuildMusicManager musicManager) {
+        AudioTrack playing = musicManager.getPlayer().getPlayingTrack();
+        if (playing != null)
+            queueStore.position(guildId, playing.getPosition());
+    }
+
+    /**
+     * Records where every guild is in its current track and writes out the queues before the bot stops.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        checkpointPositions();
+        queueStore.shutdown();
     }
 
     public void connectToVoiceChannel(AudioManager audioManager) {
@@ -82,10 +262,18 @@ public class AudioHandler {
     public void loadAndPlay(final TextChannel channel, final String trackUrl) {
         GuildMusicManager musicManager = getGuildAudioPlayer(channel.getGuild());
         Guild guild = channel.getGuild();
+        String cacheKey = TrackCache.normalize(trackUrl);
+
+        TrackCache.CachedTracks cached = trackCache.get(cacheKey);
+        if (cached != null && playCached(channel, musicManager, cached))
+            return;
+        if (cached != null)
+            trackCache.remove(cacheKey);
 
         playerManager.loadItemOrdered(musicManager, trackUrl, new AudioLoadResultHandler() {
             @Override
             public void trackLoaded(AudioTrack track) {
+                cache(cacheKey, null, Collections.singletonList(track));
                 channel.sendMessage("Adding to queue " + track.getInfo().title).queue();
 
                 connectToVoiceChannel(guild.getAudioManager());
@@ -95,13 +283,11 @@ public class AudioHandler {
             @Override
             public void playlistLoaded(AudioPlaylist playlist) {
 
-                TrackScheduler scheduler = musicManager.scheduler;
+                cache(cacheKey, playlist.getName() != null ? playlist.getName() : "", playlist.getTracks());
 
                 channel.sendMessage("adding items from " + playlist.getName() + " to queue").queue();
                 connectToVoiceChannel(guild.getAudioManager());
-                for(AudioTrack track : playlist.getTracks()){
-                    scheduler.queue(track);
-                }
+                musicManager.scheduler.queueAll(playlist.getTracks());
             }
 
             @Override
@@ -116,8 +302,56 @@ public class AudioHandler {
         });
     }
 
+    /**
+     * Queues tracks resolved earlier without going to the network. Only the first track is decoded, the rest of a
+     * playlist is queued encoded as it is cached.
+     *
+     * @return false if the first track could not be decoded and the tracks have to be loaded again
+     */
+    private boolean playCached(TextChannel channel, GuildMusicManager musicManager, TrackCache.CachedTracks cached) {
+        if (cached.size() == 0)
+            return false;
+        AudioTrack first;
+        try {
+            first = trackCodec.decode(cached.getTrack(0));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        if (cached.isPlaylist())
+            channel.sendMessage("adding items from " + cached.getPlaylistName() + " to queue").queue();
+        else
+            channel.sendMessage("Adding to queue " + first.getInfo().title).queue();
+
+        connectToVoiceChannel(channel.getGuild().getAudioManager());
+        if (cached.size() == 1) {
+            musicManager.scheduler.queue(first);
+        } else {
+            List<byte[]> rest = new ArrayList<>(cached.size() - 1);
+            for (int i = 1; i < cached.size(); i++) {
+                rest.add(cached.getTrack(i));
+            }
+            musicManager.scheduler.queueAllEncoded(first, rest);
+        }
+        return true;
+    }
+
+    private void cache(String cacheKey, String playlistName, List<AudioTrack> tracks) {
+        try {
+            byte[][] encoded = new byte[tracks.size()][];
+            for (int i = 0; i < encoded.length; i++) {
+                encoded[i] = trackCodec.encode(tracks.get(i));
+            }
+            trackCache.put(cacheKey, new TrackCache.CachedTracks(playlistName, encoded, System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Playing does not depend on the cache, the next load just resolves the tracks again
+            e.printStackTrace();
+        }
+    }
+
     public boolean pause(Guild guild){
-        AudioPlayer audioPlayer = getGuildAudioPlayer(guild).player;
+        AudioPlayer audioPlayer = getGuildAudioPlayer(guild).getPlayer();
         if(audioPlayer.isPaused()){
             guild.getController().setNickname(guild.getSelfMember(), "Bottinator").queue();
             audioPlayer.setPaused(false);
@@ -142,37 +376,71 @@ public class AudioHandler {
             audioManager.closeAudioConnection();
             GuildMusicManager musicManager = getGuildAudioPlayer(guild);
 
-            if(!musicManager.player.isPaused() && musicManager.player.getPlayingTrack() != null)
+            if(!musicManager.getPlayer().isPaused() && musicManager.getPlayer().getPlayingTrack() != null)
                 pause(guild);
         }
     }
 
-    public String queuedTracks(Guild guild){
-        GuildMusicManager musicManager = getGuildAudioPlayer(guild);
+    /**
+     * @param page page number counted from 1
+     * @return the page of the guild's queue, empty if nothing is queued
+     */
+    public String queuePage(Guild guild, int page){
+        return getGuildAudioPlayer(guild).scheduler.queuePage(page);
+    }
 
-        StringBuilder msgBuilder = new StringBuilder();
-        msgBuilder.append("- ");
-        musicManager.scheduler.queuedTracks().stream()
-                .forEach(title -> { msgBuilder.append(title); msgBuilder.append("\n- "); });
+    /**
+     * @param position place in the queue counted from 1
+     * @return the title of the removed track, or null if there is no track at the position
+     */
+    public String removeTrack(Guild guild, int position){
+        return getGuildAudioPlayer(guild).scheduler.remove(position - 1);
+    }
 
-        if(msgBuilder.length() > 0)
-            msgBuilder.deleteCharAt(msgBuilder.lastIndexOf("\n- "));
+    /**
+     * @param from place of the track in the queue counted from 1
+     * @param to place the track ends up at counted from 1
+     * @return the title of the moved track, or null if either place is outside the queue
+     */
+    public String moveTrack(Guild guild, int from, int to){
+        return getGuildAudioPlayer(guild).scheduler.move(from - 1, to - 1);
+    }
 
-        return msgBuilder.toString();
+    /**
+     * @return the number of shuffled tracks
+     */
+    public int shuffle(Guild guild){
+        return getGuildAudioPlayer(guild).scheduler.shuffle();
     }
 
     public String currentTrack(GuildMusicManager musicManager) {
-        if(musicManager.player.getPlayingTrack() != null)
-            return musicManager.player.getPlayingTrack().getInfo().title;
+        if(musicManager.getPlayer().getPlayingTrack() != null)
+            return musicManager.getPlayer().getPlayingTrack().getInfo().title;
         else
             return "";
     }
 
     public int getVolume(Guild guild) {
-        return getGuildAudioPlayer(guild).player.getVolume();
+        return getGuildAudioPlayer(guild).getPlayer().getVolume();
     }
 
     public void setVolume(Guild guild, int volume) {
-        getGuildAudioPlayer(guild).player.setVolume(volume);
+        getGuildAudioPlayer(guild).getPlayer().setVolume(volume);
+    }
+
+    @Override
+    public String reportMetrics() {
+        int players = 0;
+        StringBuilder perShard = new StringBuilder();
+        for (int shard = 0; shard < musicManagers.size(); shard++) {
+            int size = musicManagers.get(shard).size();
+            players += size;
+            if (shardIds.contains(shard))
+                perShard.append(perShard.length() == 0 ? "" : ", ").append(shard).append(": ").append(size);
+        }
+        return String.format("audio: %d players, %d created, %d evicted after %d idle minutes%n"
+                        + "players per shard: %s%n%s%n%s",
+                players, created.sum(), evicted.sum(), TimeUnit.NANOSECONDS.toMinutes(idleNanos),
+                perShard, frameStatistics.report(), trackCache.report());
     }
 }
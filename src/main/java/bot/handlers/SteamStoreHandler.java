@@ -1,57 +1,94 @@
 package bot.handlers;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
+import bot.Startup;
+import cache.LruCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import steam.AppCatalog;
+import steam.AppIndex;
+import steam.CatalogRefresher;
+import steam.CatalogSnapshot;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.LinkedList;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 
 @Component
 public class SteamStoreHandler {
 
     private final String url = "http://api.steampowered.com/ISteamApps/GetAppList/v0002/?key=STEAMKEY&format=json";
-
-    private JSONArray apps;
-
-    public SteamStoreHandler(){
-        fetchData();
-    }
-
-    private void fetchData() {
-
-        BufferedReader in = null;
-
-        try {
-            URL urlObj = new URL(url);
-            HttpURLConnection connection = (HttpURLConnection) urlObj.openConnection();
-
-            connection.setRequestMethod("GET");
-            connection.setRequestProperty("Content-Type", "application/json");
-            int responseCode = connection.getResponseCode();
-
-            in = new BufferedReader(
-                    new InputStreamReader(connection.getInputStream()));
-            String inputLine;
-            StringBuffer content = new StringBuffer();
-            while ((inputLine = in.readLine()) != null) {
-                content.append(inputLine);
+    private final String storeUrl = "https://store.steampowered.com/app/";
+    private final String storeFrontPage = "https://store.steampowered.com/";
+
+    private static final int REDIRECT_TIMEOUT_MILLIS = 5000;
+
+    private final CatalogRefresher catalogRefresher;
+
+    private final ExecutorService redirectChecks;
+    private final LruCache<String, Boolean> listedApps;
+    private final long storeCheckDeadlineMillis;
+
+    @Autowired
+    public SteamStoreHandler(@Value("${STEAM_SNAPSHOT:./steamapps.snapshot}") String snapshotPath,
+                             @Value("${STEAM_REFRESH_MINUTES:360}") long refreshMinutes,
+                             @Value("${STORE_CHECK_THREADS:8}") int storeCheckThreads,
+                             @Value("${STORE_CHECK_DEADLINE_MS:5000}") long storeCheckDeadlineMillis,
+                             @Value("${STORE_CACHE_SIZE:20000}") int storeCacheSize,
+                             @Value("${STORE_CACHE_HOURS:12}") long storeCacheHours,
+                             @Value("${STEAM_CATALOG_WAIT_SECONDS:60}") long catalogWaitSeconds,
+                             Startup startup) throws MalformedURLException {
+
+        this.storeCheckDeadlineMillis = storeCheckDeadlineMillis;
+        this.listedApps = new LruCache<>(storeCacheSize, TimeUnit.HOURS.toMillis(storeCacheHours));
+        this.redirectChecks = Executors.newFixedThreadPool(storeCheckThreads, runnable -> {
+            Thread thread = new Thread(runnable, "steam-store-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        catalogRefresher = new CatalogRefresher(new URL(url), Paths.get(snapshotPath),
+                catalog -> AppIndex.build(catalog, entry -> isSearchable(catalog, entry)));
+        // The snapshot from the last run is searchable as soon as it is mapped, fresh app lists are fetched in the
+        // background. Without a snapshot the catalog is ready after the first fetch, !store waits until then.
+        startup.register(Startup.Subsystem.STEAM_CATALOG, () -> {
+            catalogRefresher.start(refreshMinutes, TimeUnit.MINUTES);
+            try {
+                catalogRefresher.firstCatalog().get(catalogWaitSeconds, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                // The fetch keeps being retried, !store becomes available once a catalog arrives after all
+                catalogRefresher.firstCatalog().thenRun(() -> startup.ready(Startup.Subsystem.STEAM_CATALOG));
+                throw new IllegalStateException("No steam catalog after " + catalogWaitSeconds + " s", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the steam catalog", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
             }
+        });
+    }
 
-            //Read JSON response and print
-            JSONObject myResponse = new JSONObject(content.toString());
-            apps = myResponse.getJSONObject("applist").getJSONArray("apps");
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-            if( in != null) { try { in.close(); } catch (Exception e) {  }}
-        }
+    /**
+     * Dashed names and trailers are never listed so they are left out of the index.
+     */
+    private static boolean isSearchable(AppCatalog catalog, int entry) {
+        return !catalog.nameContains(entry, "-") && !catalog.nameContains(entry, "trailer");
     }
 
     /**
@@ -66,21 +103,90 @@ public class SteamStoreHandler {
 
         String retUrl = "";
         try {
-            URL urlObj = new URL(url);
-            HttpURLConnection connection = (HttpURLConnection) urlObj.openConnection();
+            retUrl = redirectLocation(url);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        return retUrl;
+    }
+
+    private String redirectLocation(String url) throws IOException {
+
+        URL urlObj = new URL(url);
+        HttpURLConnection connection = (HttpURLConnection) urlObj.openConnection();
 
-            connection.setInstanceFollowRedirects(false);
-            connection.setRequestMethod("GET");
+        connection.setInstanceFollowRedirects(false);
+        connection.setRequestMethod("GET");
+        connection.setConnectTimeout(REDIRECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(REDIRECT_TIMEOUT_MILLIS);
 
-            if(connection.getResponseCode() == 302){
-                retUrl = connection.getHeaderFields().get("Location").get(0);
+        try {
+            if(connection.getResponseCode() == 302)
+                return connection.getHeaderFields().get("Location").get(0);
+            return "";
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Builds the store page urls of the given apps and leaves out the delisted ones, that is those redirecting to the
+     * store front page. Unknown apps are checked concurrently on a bounded pool and the answers are cached per app,
+     * checks still running when the deadline passes are cancelled and their apps left out.
+     *
+     * @param appIDs apps to check, in the order the urls should be listed
+     * @return store page urls of the apps that are still listed
+     */
+    public List<String> listedStoreUrls(List<String> appIDs) {
+
+        Map<String, Boolean> listed = new HashMap<>();
+        List<String> unknownIDs = new ArrayList<>();
+        List<Callable<Boolean>> checks = new ArrayList<>();
+        for(String appID : appIDs) {
+            Boolean cached = listedApps.get(appID);
+            if(cached != null) {
+                listed.put(appID, cached);
+            } else if(!listed.containsKey(appID)) {
+                // Listed until checked, which is also what apps whose check fails fall back to.
+                listed.put(appID, true);
+                unknownIDs.add(appID);
+                checks.add(() -> isListed(appID));
             }
+        }
 
-        } catch (IOException e) {
-            e.printStackTrace();
+        if(!checks.isEmpty()) {
+            try {
+                List<Future<Boolean>> results = redirectChecks.invokeAll(checks, storeCheckDeadlineMillis, TimeUnit.MILLISECONDS);
+                for(int i = 0; i < results.size(); i++) {
+                    String appID = unknownIDs.get(i);
+                    try {
+                        boolean isListed = results.get(i).get();
+                        listedApps.put(appID, isListed);
+                        listed.put(appID, isListed);
+                    } catch (CancellationException e) {
+                        listed.put(appID, false);
+                    } catch (ExecutionException e) {
+                        // Not cached so it is checked again next time.
+                        e.getCause().printStackTrace();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Collections.emptyList();
+            }
         }
 
-        return retUrl;
+        List<String> urls = new ArrayList<>();
+        for(String appID : appIDs) {
+            if(listed.get(appID))
+                urls.add(storeUrl + appID);
+        }
+        return urls;
+    }
+
+    private boolean isListed(String appID) throws IOException {
+        return !redirectLocation(storeUrl + appID).equals(storeFrontPage);
     }
 
     /**
@@ -93,19 +199,27 @@ public class SteamStoreHandler {
      */
     public List<String> getAppIDs(String getName) {
 
-        List<String> appIDs = new LinkedList<>();
-        JSONObject app;
-        for(int i = 0; i < apps.length(); i++) {
-            app = apps.getJSONObject(i);
-            String appName = app.getString("name").toLowerCase();
-            if(appName.contains(getName)
-                    && !appName.contains("-")
-                    && !appName.contains("trailer")) {
-                System.out.println(app);
-                appIDs.add(Integer.toString(app.getInt("appid")));
-            }
-        }
-        return appIDs;
+        CatalogSnapshot current = catalogRefresher.current();
+        if(current == null)
+            return Collections.emptyList();
+
+        return current.getIndex().search(getName);
+    }
+
+    /**
+     * Searches the app names for the best matches of a possibly misspelled name
+     *
+     * @param getName full or partial name of the steam app
+     * @param limit maximum number of apps to return
+     * @return list contains only the appID, best match first, and is empty if no matches are found
+     */
+    public List<String> getRankedAppIDs(String getName, int limit) {
+
+        CatalogSnapshot current = catalogRefresher.current();
+        if(current == null)
+            return Collections.emptyList();
+
+        return current.getIndex().searchRanked(getName, limit);
     }
 
 }
@@ -0,0 +1,119 @@
+package cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Size bounded cache that evicts the least recently used entry, optionally dropping entries older than a time to live.
+ * All methods are synchronized, entries are small and lookups short, so a single lock is enough.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class LruCache<K, V> {
+
+    private final int capacity;
+    private final long ttlNanos;
+    private final LinkedHashMap<K, CacheEntry<V>> entries;
+
+    private long hits;
+    private long misses;
+
+    /**
+     * @param capacity maximum number of entries
+     * @param ttlMillis how long an entry stays valid after it was put, 0 to keep entries until they are evicted
+     */
+    public LruCache(int capacity, long ttlMillis) {
+        this.capacity = capacity;
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.entries = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+                return size() > LruCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * @return the cached value, or null if there is none or it has expired
+     */
+    public synchronized V get(K key) {
+        CacheEntry<V> entry = entries.get(key);
+        if (entry == null || isExpired(entry, System.nanoTime())) {
+            if (entry != null)
+                entries.remove(key);
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    public synchronized void put(K key, V value) {
+        entries.put(key, new CacheEntry<>(value, System.nanoTime()));
+    }
+
+    /**
+     * Returns the cached value or computes and caches it. The computation runs under the cache lock, so it should be
+     * cheap compared to what it saves but must not block on other threads using this cache.
+     */
+    public synchronized V computeIfAbsent(K key, Function<? super K, ? extends V> loader) {
+        V value = get(key);
+        if (value == null) {
+            value = loader.apply(key);
+            if (value != null)
+                put(key, value);
+        }
+        return value;
+    }
+
+    public synchronized void remove(K key) {
+        entries.remove(key);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Drops every expired entry, lookups already ignore them so this only frees the memory early.
+     */
+    public synchronized void evictExpired() {
+        if (ttlNanos <= 0)
+            return;
+        long now = System.nanoTime();
+        Iterator<CacheEntry<V>> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (isExpired(iterator.next(), now))
+                iterator.remove();
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private boolean isExpired(CacheEntry<V> entry, long now) {
+        return ttlNanos > 0 && now - entry.createdNanos > ttlNanos;
+    }
+
+    private static final class CacheEntry<V> {
+        private final V value;
+        private final long createdNanos;
+
+        private CacheEntry(V value, long createdNanos) {
+            this.value = value;
+            this.createdNanos = createdNanos;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package dice;
+
+import java.util.Arrays;
+
+/**
+ * Convolutions of probability vectors. Small ones are computed directly, large ones through a fast Fourier transform,
+ * which brings summing hundreds of dice with hundreds of sides down from minutes to milliseconds. Transforms leave
+ * rounding noise around 1e-16 of the largest probability on every value, so values below {@link #NOISE} of the largest
+ * one are set to zero rather than reported as tiny but possible outcomes.
+ */
+final class Convolution {
+
+    // Below this many multiply-adds the direct product beats the transform
+    private static final long DIRECT_WORK = 1 << 15;
+    // Upper bound of sliding window work for the sum of uniform dice before switching to repeated squaring
+    private static final long WINDOW_WORK = 1 << 24;
+    static final double NOISE = 1e-12;
+
+    private Convolution() { }
+
+    static double[] convolve(double[] a, double[] b) {
+        if ((long) a.length * b.length <= DIRECT_WORK || Math.min(a.length, b.length) <= 16)
+            return direct(a, b);
+        return transformed(a, b);
+    }
+
+    /**
+     * @return the distribution of the sum of count independent copies of the given distribution
+     */
+    static double[] power(double[] single, int count) {
+        double[] result = {1};
+        double[] base = single;
+        while (count > 0) {
+            if ((count & 1) != 0)
+                result = convolve(result, base);
+            count >>= 1;
+            if (count > 0)
+                base = convolve(base, base);
+        }
+        return result;
+    }
+
+    /**
+     * @return the distribution of the sum of count dice numbered 0 to sides - 1
+     */
+    static double[] uniformSum(int count, int sides) {
+        long length = (long) count * (sides - 1) + 1;
+        if (count * length > WINDOW_WORK) {
+            double[] die = new double[sides];
+            Arrays.fill(die, 1.0 / sides);
+            return power(die, count);
+        }
+
+        // Adding a die replaces every probability by the mean of a window of sides probabilities, which running sums
+        // give in constant time per value
+        double[] current = {1};
+        for (int dice = 1; dice <= count; dice++) {
+            double[] next = new double[current.length + sides - 1];
+            double window = 0;
+            for (int value = 0; value < next.length; value++) {
+                if (value < current.length)
+                    window += current[value];
+                if (value - sides >= 0)
+                    window -= current[value - sides];
+                next[value] = Math.max(0, window / sides);
+            }
+            // Subtracting the large middle values leaves the falling half with noise in its tail, the rising half is
+            // exact to rounding and the sum is symmetric
+            for (int value = 0; value < next.length / 2; value++) {
+                next[next.length - 1 - value] = next[value];
+            }
+            current = next;
+        }
+        return current;
+    }
+
+    private static double[] direct(double[] a, double[] b) {
+        double[] result = new double[a.length + b.length - 1];
+        for (int i = 0; i < a.length; i++) {
+            double x = a[i];
+            if (x == 0)
+                continue;
+            for (int j = 0; j < b.length; j++) {
+                result[i + j] += x * b[j];
+            }
+        }
+        return result;
+    }
+
+    private static double[] transformed(double[] a, double[] b) {
+        int length = a.length + b.length - 1;
+        int size = Integer.highestOneBit(length - 1) << 1;
+
+        double[] re = new double[size];
+        double[] im = new double[size];
+        System.arraycopy(a, 0, re, 0, a.length);
+        if (a == b) {
+            transform(re, im, false);
+            for (int i = 0; i < size; i++) {
+                double r = re[i] * re[i] - im[i] * im[i];
+                im[i] = 2 * re[i] * im[i];
+                re[i] = r;
+            }
+        } else {
+            // Both real inputs go into one complex transform, b as the imaginary part, and are separated again using
+            // the symmetry of the transform of a real sequence
+            System.arraycopy(b, 0, im, 0, b.length);
+            transform(re, im, false);
+            double[] productRe = new double[size];
+            double[] productIm = new double[size];
+            for (int i = 0; i < size; i++) {
+                int j = (size - i) & (size - 1);
+                double aRe = (re[i] + re[j]) / 2;
+                double aIm = (im[i] - im[j]) / 2;
+                double bRe = (im[i] + im[j]) / 2;
+                double bIm = (re[j] - re[i]) / 2;
+                productRe[i] = aRe * bRe - aIm * bIm;
+                productIm[i] = aRe * bIm + aIm * bRe;
+            }
+            re = productRe;
+            im = productIm;
+        }
+        transform(re, im, true);
+
+        double[] result = new double[length];
+        double largest = 0;
+        for (int i = 0; i < length; i++) {
+            result[i] = re[i] / size;
+            largest = Math.max(largest, result[i]);
+        }
+        double noise = largest * NOISE;
+        for (int i = 0; i < length; i++) {
+            if (result[i] < noise)
+                result[i] = 0;
+        }
+        return result;
+    }
+
+    /**
+     * In place iterative radix 2 transform, the length must be a power of two. The inverse is not scaled.
+     */
+    private static void transform(double[] re, double[] im, boolean inverse) {
+        int size = re.length;
+
+        for (int i = 1, j = 0; i < size; i++) {
+            int bit = size >> 1;
+            for (; (j & bit) != 0; bit >>= 1) {
+                j ^= bit;
+            }
+            j ^= bit;
+            if (i < j) {
+                double t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+
+        // Twiddle factors come from one table of the largest stage, computed directly instead of by recurrence so
+        // rounding errors do not pile up over long transforms
+        double[] cos = new double[size / 2];
+        double[] sin = new double[size / 2];
+        double sign = inverse ? 1 : -1;
+        for (int i = 0; i < size / 2; i++) {
+            double angle = 2 * Math.PI * i / size;
+            cos[i] = Math.cos(angle);
+            sin[i] = sign * Math.sin(angle);
+        }
+
+        for (int half = 1; half < size; half <<= 1) {
+            int step = size / (half << 1);
+            for (int start = 0; start < size; start += half << 1) {
+                for (int k = 0; k < half; k++) {
+                    double wRe = cos[k * step];
+                    double wIm = sin[k * step];
+                    int even = start + k;
+                    int odd = even + half;
+                    double oddRe = re[odd] * wRe - im[odd] * wIm;
+                    double oddIm = re[odd] * wIm + im[odd] * wRe;
+                    re[odd] = re[even] - oddRe;
+                    im[odd] = im[even] - oddIm;
+                    re[even] += oddRe;
+                    im[even] += oddIm;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package dice;
+
+import cache.LruCache;
+import org.springframework.stereotype.Component;
+
+/**
+ * Compiles dice expressions and caches the result by expression text, so a table rolling the same dice over and over
+ * only parses them once.
+ */
+@Component
+public class DiceCompiler {
+
+    private final LruCache<String, DiceExpression> expressions = new LruCache<>(1024, 0);
+
+    /**
+     * @param text the dice expression
+     * @return the compiled expression
+     * @throws DiceFormatException if the text is not a valid expression
+     */
+    public DiceExpression compile(String text) {
+        DiceExpression expression = expressions.get(text);
+        if (expression == null) {
+            expression = DiceExpression.parse(text);
+            expressions.put(text, expression);
+        }
+        return expression;
+    }
+}
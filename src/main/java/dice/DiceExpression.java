@@ -0,0 +1,424 @@
+package dice;
+
+import random.Random;
+
+import java.util.Arrays;
+
+/**
+ * A compiled dice expression such as {@code 4d6kh3 + 1d4 - 2}, {@code 3d6!} or {@code 10d10#7}. Parsing is a single
+ * hand written pass over the text that produces a few flat arrays describing the terms, rolling then only walks those
+ * arrays. Expressions are immutable and can be cached and rolled from several threads at once.
+ *
+ * Grammar, whitespace is allowed between all tokens:
+ * <pre>
+ * expression := term (('+' | '-') term)* ('#' number)?
+ * term       := number? 'd' number modifier* | number
+ * modifier   := '!' | ('k' | 'd') ('h' | 'l')? number
+ * </pre>
+ * {@code !} explodes dice that roll their highest face, each explosion adds another die to the term.
+ * {@code kh}/{@code kl} keep the highest or lowest dice of the term and {@code dh}/{@code dl} drop them, a bare
+ * {@code k} keeps the highest and a bare {@code d} drops the lowest. With {@code #} every kept die rolling the target or
+ * more counts as a success and the successes are counted instead of summing the dice.
+ */
+public final class DiceExpression {
+
+    public static final int MAX_DICE = 999;
+    public static final int MAX_TERMS = 20;
+    public static final int MAX_EXPLOSIONS = 999;
+
+    public static final int KEEP_ALL = 0;
+    public static final int KEEP_HIGHEST = 1;
+    public static final int KEEP_LOWEST = 2;
+    public static final int DROP_HIGHEST = 3;
+    public static final int DROP_LOWEST = 4;
+
+    private final String text;
+    private final int termCount;
+    private final int[] counts;
+    private final int[] sides;
+    private final int[] keepModes;
+    private final int[] keepCounts;
+    private final boolean[] exploding;
+    private final boolean[] negative;
+    private final long modifier;
+    private final int target;
+
+    private DiceExpression(String text, int termCount, int[] counts, int[] sides, int[] keepModes, int[] keepCounts,
+                           boolean[] exploding, boolean[] negative, long modifier, int target) {
+        this.text = text;
+        this.termCount = termCount;
+        this.counts = counts;
+        this.sides = sides;
+        this.keepModes = keepModes;
+        this.keepCounts = keepCounts;
+        this.exploding = exploding;
+        this.negative = negative;
+        this.modifier = modifier;
+        this.target = target;
+    }
+
+    /**
+     * Compiles a dice expression, constant terms are folded into a single modifier.
+     *
+     * @param text the expression
+     * @return the compiled expression
+     * @throws DiceFormatException if the text is not a valid expression
+     */
+    public static DiceExpression parse(String text) {
+        return new Parser(text).parse();
+    }
+
+    /**
+     * Rolls the expression into a reusable roll buffer.
+     *
+     * @param random source of the dice results
+     * @param roll buffer that receives the result, its previous content is overwritten
+     */
+    public void roll(Random random, DiceRoll roll) {
+
+        roll.reset(this);
+        int explosions = 0;
+        for (int term = 0; term < termCount; term++) {
+            int start = roll.size;
+            int faces = sides[term];
+
+            int from = roll.reserve(counts[term], (byte) 0);
+            rollInto(random, faces, roll.values, from, counts[term]);
+
+            // Explosions are rolled in rounds, every die that hit the highest face in one round adds a die to the next.
+            int to = roll.size;
+            while (exploding[term] && explosions < MAX_EXPLOSIONS) {
+                int maxed = 0;
+                for (int die = from; die < to; die++) {
+                    if (roll.values[die] == faces)
+                        maxed++;
+                }
+                maxed = Math.min(maxed, MAX_EXPLOSIONS - explosions);
+                if (maxed == 0)
+                    break;
+
+                explosions += maxed;
+                from = roll.reserve(maxed, DiceRoll.EXPLODED);
+                rollInto(random, faces, roll.values, from, maxed);
+                to = roll.size;
+            }
+
+            applyKeep(term, roll, start);
+            roll.endTerm();
+        }
+
+        score(roll);
+    }
+
+    private static void rollInto(Random random, int faces, int[] values, int offset, int length) {
+        random.nextInts(faces, values, offset, length);
+        for (int i = offset; i < offset + length; i++) {
+            values[i]++;
+        }
+    }
+
+    /**
+     * Marks the dice dropped by the keep or drop modifier of the term, ties are broken in favour of earlier dice.
+     */
+    void applyKeep(int term, DiceRoll roll, int start) {
+        int length = roll.size - start;
+        int mode = keepModes[term];
+        if (mode == KEEP_ALL)
+            return;
+
+        boolean highest = mode == KEEP_HIGHEST || mode == DROP_LOWEST;
+        int kept = mode == KEEP_HIGHEST || mode == KEEP_LOWEST
+                ? Math.min(keepCounts[term], length)
+                : Math.max(0, length - keepCounts[term]);
+
+        if (kept == length)
+            return;
+
+        int[] sorted = roll.scratch(length);
+        System.arraycopy(roll.values, start, sorted, 0, length);
+        Arrays.sort(sorted, 0, length);
+
+        // Dice beyond the threshold are always kept, dice equal to it only until enough are kept.
+        int threshold = kept == 0 ? 0 : highest ? sorted[length - kept] : sorted[kept - 1];
+        int beyond = 0;
+        for (int i = 0; i < length; i++) {
+            int value = sorted[i];
+            if (kept > 0 && (highest ? value > threshold : value < threshold))
+                beyond++;
+        }
+        int equalKept = kept - beyond;
+
+        for (int die = start; die < roll.size; die++) {
+            int value = roll.values[die];
+            boolean keep;
+            if (kept == 0)
+                keep = false;
+            else if (highest ? value > threshold : value < threshold)
+                keep = true;
+            else if (value == threshold && equalKept > 0) {
+                keep = true;
+                equalKept--;
+            } else
+                keep = false;
+
+            if (!keep)
+                roll.flags[die] |= DiceRoll.DROPPED;
+        }
+    }
+
+    void score(DiceRoll roll) {
+        long total = modifier;
+        int successes = 0;
+        for (int term = 0; term < termCount; term++) {
+            long termTotal = 0;
+            for (int die = roll.termStart(term); die < roll.termEnd(term); die++) {
+                if ((roll.flags[die] & DiceRoll.DROPPED) != 0)
+                    continue;
+                termTotal += roll.values[die];
+                if (target > 0 && roll.values[die] >= target)
+                    successes++;
+            }
+            total += negative[term] ? -termTotal : termTotal;
+        }
+        roll.successes = successes;
+        roll.total = target > 0 ? successes : total;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public int getTermCount() {
+        return termCount;
+    }
+
+    public int getCount(int term) {
+        return counts[term];
+    }
+
+    public int getSides(int term) {
+        return sides[term];
+    }
+
+    public int getKeepMode(int term) {
+        return keepModes[term];
+    }
+
+    public int getKeepCount(int term) {
+        return keepCounts[term];
+    }
+
+    public boolean isExploding(int term) {
+        return exploding[term];
+    }
+
+    public boolean isNegative(int term) {
+        return negative[term];
+    }
+
+    /**
+     * @return sum of the constant terms
+     */
+    public long getModifier() {
+        return modifier;
+    }
+
+    public boolean isSuccessCount() {
+        return target > 0;
+    }
+
+    /**
+     * @return the success target, 0 if the expression sums the dice
+     */
+    public int getTarget() {
+        return target;
+    }
+
+    /**
+     * @return number of dice rolled before explosions
+     */
+    public int getDiceCount() {
+        int dice = 0;
+        for (int term = 0; term < termCount; term++) {
+            dice += counts[term];
+        }
+        return dice;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    private static final class Parser {
+
+        private final String text;
+        private int position;
+
+        private int termCount;
+        private final int[] counts = new int[MAX_TERMS];
+        private final int[] sides = new int[MAX_TERMS];
+        private final int[] keepModes = new int[MAX_TERMS];
+        private final int[] keepCounts = new int[MAX_TERMS];
+        private final boolean[] exploding = new boolean[MAX_TERMS];
+        private final boolean[] negative = new boolean[MAX_TERMS];
+        private long modifier;
+        private int diceCount;
+
+        private Parser(String text) {
+            this.text = text;
+        }
+
+        private DiceExpression parse() {
+
+            boolean hasConstants = false;
+            boolean subtract = false;
+            while (true) {
+                skipWhitespace();
+                hasConstants |= !term(subtract);
+
+                skipWhitespace();
+                if (peek() == '+' || peek() == '-') {
+                    subtract = text.charAt(position++) == '-';
+                    continue;
+                }
+                break;
+            }
+
+            int target = 0;
+            if (peek() == '#') {
+                position++;
+                skipWhitespace();
+                target = number("success target");
+                if (target < 1)
+                    throw error("the success target must be at least 1");
+                if (hasConstants)
+                    throw error("modifiers can not be combined with a success target");
+                for (int term = 0; term < termCount; term++) {
+                    if (negative[term])
+                        throw error("subtracted dice can not be combined with a success target");
+                }
+                skipWhitespace();
+            }
+
+            if (position < text.length())
+                throw error("unexpected '" + text.charAt(position) + "'");
+            if (termCount == 0)
+                throw error("there are no dice to roll");
+
+            return new DiceExpression(text, termCount,
+                    Arrays.copyOf(counts, termCount), Arrays.copyOf(sides, termCount),
+                    Arrays.copyOf(keepModes, termCount), Arrays.copyOf(keepCounts, termCount),
+                    Arrays.copyOf(exploding, termCount), Arrays.copyOf(negative, termCount),
+                    modifier, target);
+        }
+
+        /**
+         * @return true if the term was dice, false if it was a constant
+         */
+        private boolean term(boolean subtract) {
+
+            int count = 1;
+            if (isDigit(peek())) {
+                int value = number("number");
+                skipWhitespace();
+                if (!isDiceSeparator(peek())) {
+                    modifier += subtract ? -value : value;
+                    return false;
+                }
+                count = value;
+            }
+
+            if (!isDiceSeparator(peek()))
+                throw error("expected dice like 2d6");
+            position++;
+            skipWhitespace();
+
+            if (termCount == MAX_TERMS)
+                throw error("at most " + MAX_TERMS + " dice terms are allowed");
+            if (count < 1)
+                throw error("at least one die must be rolled");
+            diceCount += count;
+            if (diceCount > MAX_DICE)
+                throw error("at most " + MAX_DICE + " dice can be rolled at once");
+
+            int faces = number("number of sides");
+            if (faces < 1)
+                throw error("dice need at least one side");
+
+            int term = termCount++;
+            counts[term] = count;
+            sides[term] = faces;
+            negative[term] = subtract;
+
+            while (true) {
+                skipWhitespace();
+                char c = peek();
+                if (c == '!') {
+                    position++;
+                    if (exploding[term])
+                        throw error("dice can only explode once");
+                    if (faces == 1)
+                        throw error("one sided dice can not explode");
+                    exploding[term] = true;
+                } else if (c == 'k' || c == 'K' || ((c == 'd' || c == 'D') && position + 1 < text.length()
+                        && (isDigit(text.charAt(position + 1)) || isKeepSide(text.charAt(position + 1))))) {
+                    if (keepModes[term] != KEEP_ALL)
+                        throw error("only one keep or drop is allowed per dice term");
+                    boolean keep = c == 'k' || c == 'K';
+                    position++;
+                    char side = Character.toLowerCase(peek());
+                    boolean highest = keep;
+                    if (isKeepSide(side)) {
+                        highest = side == 'h';
+                        position++;
+                    }
+                    keepModes[term] = keep ? (highest ? KEEP_HIGHEST : KEEP_LOWEST) : (highest ? DROP_HIGHEST : DROP_LOWEST);
+                    keepCounts[term] = number("number of dice to " + (keep ? "keep" : "drop"));
+                } else {
+                    return true;
+                }
+            }
+        }
+
+        private int number(String what) {
+            int start = position;
+            long value = 0;
+            while (position < text.length() && isDigit(text.charAt(position))) {
+                value = value * 10 + (text.charAt(position) - '0');
+                if (value > Integer.MAX_VALUE)
+                    throw error(what + " is too large");
+                position++;
+            }
+            if (position == start)
+                throw error("expected " + what);
+            return (int) value;
+        }
+
+        private void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private char peek() {
+            return position < text.length() ? text.charAt(position) : '\0';
+        }
+
+        private static boolean isDigit(char c) {
+            return c >= '0' && c <= '9';
+        }
+
+        private static boolean isDiceSeparator(char c) {
+            return c == 'd' || c == 'D';
+        }
+
+        private static boolean isKeepSide(char c) {
+            return c == 'h' || c == 'l' || c == 'H' || c == 'L';
+        }
+
+        private DiceFormatException error(String message) {
+            return new DiceFormatException(message + " at position " + (position + 1));
+        }
+    }
+}
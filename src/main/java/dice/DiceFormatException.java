@@ -0,0 +1,13 @@
+package dice;
+
+/**
+ * Thrown when a dice expression can not be parsed, the message says what is wrong and where.
+ */
+public class DiceFormatException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    public DiceFormatException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,309 @@
+package dice;
+
+import cache.LruCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Computes the exact distribution of the total, or the number of successes, of a {@link DiceExpression}. Every dice
+ * term is worked out on its own and the terms are then convolved together:
+ * <ul>
+ * <li>plain sums of dice by a sliding window, or repeated squaring through {@link Convolution} for large pools</li>
+ * <li>kept or dropped dice by counting how many dice show each face, from the kept end down</li>
+ * <li>success counts from the binomial distribution of dice meeting the target</li>
+ * <li>exploding dice from the geometric series of explosions, cut off once a longer chain is less likely than
+ * {@link #EXPLOSION_TAIL}</li>
+ * </ul>
+ * Distributions are cached without the constant modifier, so {@code 10d6+3} and {@code 10d6-1} share one. Whole
+ * expressions and single terms have caches of their own, so a query of many terms never evicts the terms it is built
+ * from. A distribution asked for by several stripes at once is computed by the first of them, the others wait for it.
+ */
+@Component
+public class DiceOdds {
+
+    public static final int MAX_OUTCOMES = 1 << 18;
+    static final double EXPLOSION_TAIL = 1e-12;
+    private static final long MAX_KEEP_WORK = 100_000_000L;
+
+    private final LruCache<String, CompletableFuture<Distribution>> expressions;
+    private final LruCache<String, CompletableFuture<Distribution>> terms;
+
+    /**
+     * @param cacheSize whole expression distributions kept
+     * @param termCacheSize single term distributions kept
+     */
+    @Autowired
+    public DiceOdds(@Value("${ODDS_CACHE_SIZE:128}") int cacheSize,
+                    @Value("${ODDS_TERM_CACHE_SIZE:128}") int termCacheSize) {
+        this.expressions = new LruCache<>(cacheSize, 0);
+        this.terms = new LruCache<>(termCacheSize, 0);
+    }
+
+    /**
+     * @param expression the dice
+     * @return distribution of the number of successes for expressions with a target, of the total otherwise
+     * @throws IllegalArgumentException if the expression has too many possible outcomes to compute exactly, or
+     * combines keeping and exploding in one term
+     */
+    public Distribution distribution(DiceExpression expression) {
+
+        StringBuilder key = new StringBuilder();
+        long outcomes = 1;
+        double explosions = 0;
+        double explosionVariance = 0;
+        for (int term = 0; term < expression.getTermCount(); term++) {
+            key.append(expression.isNegative(term) ? '-' : '+').append(termKey(expression, term));
+            outcomes += termOutcomes(expression, term) - 1;
+            if (expression.isExploding(term)) {
+                // Explosions of one die are geometric with p = 1 - 1/sides
+                double sides = expression.getSides(term);
+                explosions += expression.getCount(term) / (sides - 1);
+                explosionVariance += expression.getCount(term) * sides / ((sides - 1) * (sides - 1));
+            }
+        }
+        if (outcomes > MAX_OUTCOMES)
+            throw new IllegalArgumentException("there are too many possible results to work out exactly");
+        // The distribution ignores the cap on explosions per roll, which is fine as long as rolls practically never hit it
+        if (explosions + 6 * Math.sqrt(explosionVariance) > DiceExpression.MAX_EXPLOSIONS)
+            throw new IllegalArgumentException("too many dice are expected to explode to work out the odds");
+
+        Distribution dice = cached(expressions, key.toString(), () -> combine(expression));
+        return expression.isSuccessCount() ? dice : dice.shift(expression.getModifier());
+    }
+
+    private Distribution combine(DiceExpression expression) {
+        Distribution combined = null;
+        for (int term = 0; term < expression.getTermCount(); term++) {
+            Distribution next = term(expression, term);
+            if (expression.isNegative(term))
+                next = next.negate();
+            combined = combined == null ? next : new Distribution(combined.getMinimum() + next.getMinimum(),
+                    Convolution.convolve(combined.probabilities(), next.probabilities()));
+        }
+        return combined;
+    }
+
+    private Distribution term(DiceExpression expression, int term) {
+        return cached(terms, termKey(expression, term), () -> computeTerm(expression, term));
+    }
+
+    /**
+     * Looks the distribution up, or computes it if no other thread is already doing so. Only an empty future is put
+     * under the cache lock, the distribution itself is computed outside of it. Failures are not cached.
+     */
+    private static Distribution cached(LruCache<String, CompletableFuture<Distribution>> cache, String key,
+                                       Supplier<Distribution> compute) {
+        CompletableFuture<Distribution> created = new CompletableFuture<>();
+        CompletableFuture<Distribution> cached = cache.computeIfAbsent(key, missing -> created);
+        if (cached == created) {
+            try {
+                created.complete(compute.get());
+            } catch (RuntimeException e) {
+                cache.remove(key);
+                created.completeExceptionally(e);
+                throw e;
+            }
+        }
+        try {
+            return cached.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Key of everything that decides the distribution of a term, apart from its sign.
+     */
+    private static String termKey(DiceExpression expression, int term) {
+        int keepMode = expression.getKeepMode(term);
+        int count = expression.getCount(term);
+        int kept = keptDice(keepMode, count, expression.getKeepCount(term));
+        StringBuilder key = new StringBuilder().append(count).append('d').append(expression.getSides(term));
+        if (kept < count)
+            key.append(isHighestKept(keepMode) ? "kh" : "kl").append(kept);
+        if (expression.isExploding(term))
+            key.append('!');
+        if (expression.isSuccessCount())
+            key.append('#').append(expression.getTarget());
+        return key.toString();
+    }
+
+    private static long termOutcomes(DiceExpression expression, int term) {
+        int count = expression.getCount(term);
+        int sides = expression.getSides(term);
+        int kept = keptDice(expression.getKeepMode(term), count, expression.getKeepCount(term));
+        if (expression.isSuccessCount())
+            return expression.isExploding(term) ? (long) count * explosionLimit(sides) + 1 : kept + 1;
+        if (expression.isExploding(term))
+            return (long) count * (explosionLimit(sides) * sides - 2) + 1;
+        return (long) kept * (sides - 1) + 1;
+    }
+
+    private static Distribution computeTerm(DiceExpression expression, int term) {
+
+        int count = expression.getCount(term);
+        int sides = expression.getSides(term);
+        int keepMode = expression.getKeepMode(term);
+        int kept = keptDice(keepMode, count, expression.getKeepCount(term));
+        boolean highest = isHighestKept(keepMode);
+
+        if (expression.isExploding(term)) {
+            if (kept < count)
+                throw new IllegalArgumentException("odds of keeping or dropping exploding dice are not supported");
+            int target = expression.getTarget();
+            double[] die = target > 0 ? explodingSuccesses(sides, target) : explodingFaces(sides);
+            return new Distribution(target > 0 ? 0 : count, Convolution.power(die, count));
+        }
+
+        if (expression.isSuccessCount())
+            return keptSuccesses(count, sides, kept, highest, expression.getTarget());
+        if (kept == 0)
+            return new Distribution(0, new double[] {1});
+        if (kept == count)
+            return new Distribution(count, Convolution.uniformSum(count, sides));
+        return keptSum(count, sides, kept, highest);
+    }
+
+    /**
+     * @return number of dice a keep or drop modifier leaves
+     */
+    private static int keptDice(int keepMode, int count, int keepCount) {
+        switch (keepMode) {
+            case DiceExpression.KEEP_HIGHEST:
+            case DiceExpression.KEEP_LOWEST:
+                return Math.min(keepCount, count);
+            case DiceExpression.DROP_HIGHEST:
+            case DiceExpression.DROP_LOWEST:
+                return Math.max(0, count - keepCount);
+            default:
+                return count;
+        }
+    }
+
+    private static boolean isHighestKept(int keepMode) {
+        return keepMode == DiceExpression.KEEP_HIGHEST || keepMode == DiceExpression.DROP_LOWEST
+                || keepMode == DiceExpression.KEEP_ALL;
+    }
+
+    /**
+     * @return longest chain of explosions of one die that is still more likely than the tail that is cut off
+     */
+    private static int explosionLimit(int sides) {
+        return (int) Math.ceil(Math.log(EXPLOSION_TAIL) / Math.log(1.0 / sides));
+    }
+
+    /**
+     * One exploding die rolls k highest faces and then a lower face r with probability (1/sides)^(k+1), adding up to
+     * k * sides + r. Index 0 is a total of 1.
+     */
+    private static double[] explodingFaces(int sides) {
+        int chains = explosionLimit(sides);
+        double[] die = new double[chains * sides - 1];
+        double chance = 1.0 / sides;
+        for (int explosions = 0; explosions < chains; explosions++) {
+            for (int face = 1; face < sides; face++) {
+                die[explosions * sides + face - 1] = chance;
+            }
+            chance /= sides;
+        }
+        return die;
+    }
+
+    /**
+     * Successes of one exploding die, every exploded highest face and the final face count when they meet the target.
+     */
+    private static double[] explodingSuccesses(int sides, int target) {
+        int chains = explosionLimit(sides);
+        double[] die = new double[chains + 1];
+        double chance = 1.0 / sides;
+        boolean highestSucceeds = target <= sides;
+        int succeedingFaces = Math.max(0, sides - target);
+        for (int explosions = 0; explosions < chains; explosions++) {
+            int base = highestSucceeds ? explosions : 0;
+            die[base + 1] += chance * succeedingFaces;
+            die[base] += chance * (sides - 1 - succeedingFaces);
+            chance /= sides;
+        }
+        return die;
+    }
+
+    /**
+     * With X of the count dice meeting the target, keeping the highest dice keeps min(kept, X) successes and keeping
+     * the lowest keeps max(0, kept - (count - X)).
+     */
+    private static Distribution keptSuccesses(int count, int sides, int kept, boolean highest, int target) {
+        double hit = Math.max(0, Math.min(1, (double) (sides - target + 1) / sides));
+
+        double[] binomial = {1};
+        for (int dice = 1; dice <= count; dice++) {
+            double[] next = new double[dice + 1];
+            for (int successes = 0; successes < binomial.length; successes++) {
+                next[successes] += binomial[successes] * (1 - hit);
+                next[successes + 1] += binomial[successes] * hit;
+            }
+            binomial = next;
+        }
+
+        double[] successes = new double[kept + 1];
+        for (int hits = 0; hits <= count; hits++) {
+            int keptHits = highest ? Math.min(kept, hits) : Math.max(0, kept - (count - hits));
+            successes[keptHits] += binomial[hits];
+        }
+        return new Distribution(0, successes);
+    }
+
+    /**
+     * Sum of the kept dice. Faces are visited from the kept end, for each face every possible number of the remaining
+     * dice showing it is tried, with the probability of choosing which dice those are. Dice are kept as long as fewer
+     * than kept dice have been placed.
+     */
+    private static Distribution keptSum(int count, int sides, int kept, boolean highest) {
+
+        int sums = kept * sides + 1;
+        if ((long) sides * count * count / 2 * sums > MAX_KEEP_WORK)
+            throw new IllegalArgumentException("too many dice are kept or dropped to work out the odds");
+
+        // ways[remaining][shown] = C(remaining, shown) / sides^shown
+        double[][] ways = new double[count + 1][];
+        for (int remaining = 0; remaining <= count; remaining++) {
+            ways[remaining] = new double[remaining + 1];
+            ways[remaining][0] = 1;
+            for (int shown = 1; shown <= remaining; shown++) {
+                ways[remaining][shown] = ways[remaining][shown - 1] * (remaining - shown + 1) / shown / sides;
+            }
+        }
+
+        double[][] placed = new double[count + 1][sums];
+        placed[0][0] = 1;
+        for (int step = 0; step < sides; step++) {
+            int face = highest ? sides - step : step + 1;
+            double[][] next = new double[count + 1][sums];
+            for (int dice = 0; dice <= count; dice++) {
+                double[] row = placed[dice];
+                for (int sum = 0; sum < sums; sum++) {
+                    double probability = row[sum];
+                    if (probability == 0)
+                        continue;
+                    int remaining = count - dice;
+                    int keepable = Math.max(0, kept - dice);
+                    for (int shown = 0; shown <= remaining; shown++) {
+                        int total = sum + Math.min(shown, keepable) * face;
+                        next[dice + shown][total] += probability * ways[remaining][shown];
+                    }
+                }
+            }
+            placed = next;
+        }
+
+        double[] result = new double[sums - kept];
+        System.arraycopy(placed[count], kept, result, 0, result.length);
+        return new Distribution(kept, result);
+    }
+}
@@ -0,0 +1,135 @@
+package dice;
+
+import java.util.Arrays;
+
+/**
+ * The outcome of rolling a {@link DiceExpression}: every die rolled, grouped by term, with whether it was kept and
+ * whether it came from an explosion. A roll is a reusable buffer, rolling again overwrites it without allocating once
+ * it has grown to the size of the largest expression rolled into it.
+ */
+public final class DiceRoll {
+
+    static final byte DROPPED = 1;
+    static final byte EXPLODED = 2;
+
+    int[] values = new int[64];
+    byte[] flags = new byte[64];
+    int[] termEnds = new int[8];
+    int[] scratch = new int[64];
+    int size;
+    int termCount;
+
+    long total;
+    int successes;
+    DiceExpression expression;
+
+    void reset(DiceExpression expression) {
+        this.expression = expression;
+        size = 0;
+        termCount = 0;
+        total = 0;
+        successes = 0;
+        if (termEnds.length < expression.getTermCount())
+            termEnds = new int[expression.getTermCount()];
+    }
+
+    /**
+     * Appends room for dice whose values are filled in by the caller.
+     *
+     * @return index of the first reserved die
+     */
+    int reserve(int count, byte flag) {
+        if (size + count > values.length) {
+            int capacity = Math.max(size + count, values.length * 2);
+            values = Arrays.copyOf(values, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+        }
+        int offset = size;
+        Arrays.fill(flags, offset, offset + count, flag);
+        size += count;
+        return offset;
+    }
+
+    void endTerm() {
+        termEnds[termCount++] = size;
+    }
+
+    int[] scratch(int length) {
+        if (scratch.length < length)
+            scratch = new int[Math.max(length, scratch.length * 2)];
+        return scratch;
+    }
+
+    public DiceExpression getExpression() {
+        return expression;
+    }
+
+    /**
+     * @return the sum of the kept dice and the modifier, for success counting expressions the number of successes
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    public int getSuccesses() {
+        return successes;
+    }
+
+    public int getTermCount() {
+        return termCount;
+    }
+
+    /**
+     * @return index of the first die of the term
+     */
+    public int termStart(int term) {
+        return term == 0 ? 0 : termEnds[term - 1];
+    }
+
+    /**
+     * @return index after the last die of the term
+     */
+    public int termEnd(int term) {
+        return termEnds[term];
+    }
+
+    /**
+     * @return number of dice rolled, explosions included
+     */
+    public int size() {
+        return size;
+    }
+
+    public int value(int die) {
+        return values[die];
+    }
+
+    public boolean isKept(int die) {
+        return (flags[die] & DROPPED) == 0;
+    }
+
+    public boolean isExploded(int die) {
+        return (flags[die] & EXPLODED) != 0;
+    }
+
+    /**
+     * @return true if the die counts as a success, always false when the expression has no target
+     */
+    public boolean isSuccess(int die) {
+        return expression.isSuccessCount() && isKept(die) && values[die] >= expression.getTarget();
+    }
+
+    /**
+     * Counts how often each face came up among the kept dice of a term.
+     *
+     * @param term the dice term
+     * @param counts receives the count of face f at index f - 1, must have room for every face of the term
+     */
+    public void histogram(int term, int[] counts) {
+        Arrays.fill(counts, 0, expression.getSides(term), 0);
+        for (int die = termStart(term); die < termEnd(term); die++) {
+            if (isKept(die))
+                counts[values[die] - 1]++;
+        }
+    }
+}
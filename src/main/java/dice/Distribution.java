@@ -0,0 +1,136 @@
+package dice;
+
+/**
+ * Exact probability distribution of an integer outcome, stored as the probability of every value from the minimum to
+ * the maximum. Distributions are immutable, shifting one shares the probabilities with the original.
+ */
+public final class Distribution {
+
+    private final long minimum;
+    private final double[] probabilities;
+    private final double mean;
+    private final double variance;
+
+    Distribution(long minimum, double[] probabilities) {
+        this.minimum = minimum;
+        this.probabilities = probabilities;
+
+        double sum = 0;
+        double weighted = 0;
+        for (int i = 0; i < probabilities.length; i++) {
+            sum += probabilities[i];
+            weighted += probabilities[i] * i;
+        }
+        double relativeMean = weighted / sum;
+        double squares = 0;
+        for (int i = 0; i < probabilities.length; i++) {
+            double deviation = i - relativeMean;
+            squares += probabilities[i] * deviation * deviation;
+        }
+        this.mean = minimum + relativeMean;
+        this.variance = squares / sum;
+    }
+
+    private Distribution(long minimum, double[] probabilities, double mean, double variance) {
+        this.minimum = minimum;
+        this.probabilities = probabilities;
+        this.mean = mean;
+        this.variance = variance;
+    }
+
+    /**
+     * @return the same distribution moved by a constant
+     */
+    public Distribution shift(long offset) {
+        return offset == 0 ? this : new Distribution(minimum + offset, probabilities, mean + offset, variance);
+    }
+
+    /**
+     * @return the distribution of the negated outcome
+     */
+    Distribution negate() {
+        double[] reversed = new double[probabilities.length];
+        for (int i = 0; i < reversed.length; i++) {
+            reversed[i] = probabilities[probabilities.length - 1 - i];
+        }
+        return new Distribution(-getMaximum(), reversed, -mean, variance);
+    }
+
+    double[] probabilities() {
+        return probabilities;
+    }
+
+    public long getMinimum() {
+        return minimum;
+    }
+
+    public long getMaximum() {
+        return minimum + probabilities.length - 1;
+    }
+
+    /**
+     * @return number of values from the minimum to the maximum
+     */
+    public int size() {
+        return probabilities.length;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getStandardDeviation() {
+        return Math.sqrt(variance);
+    }
+
+    public double probability(long value) {
+        if (value < minimum || value > getMaximum())
+            return 0;
+        return probabilities[(int) (value - minimum)];
+    }
+
+    public double probabilityAtLeast(long value) {
+        if (value <= minimum)
+            return 1;
+        double sum = 0;
+        for (long i = value - minimum; i < probabilities.length; i++) {
+            sum += probabilities[(int) i];
+        }
+        return Math.min(1, sum);
+    }
+
+    public double probabilityAtMost(long value) {
+        if (value >= getMaximum())
+            return 1;
+        double sum = 0;
+        for (long i = 0; i <= value - minimum; i++) {
+            sum += probabilities[(int) i];
+        }
+        return Math.min(1, sum);
+    }
+
+    /**
+     * @return the most likely value, the lowest one if several are equally likely
+     */
+    public long getMostLikely() {
+        int best = 0;
+        for (int i = 1; i < probabilities.length; i++) {
+            if (probabilities[i] > probabilities[best])
+                best = i;
+        }
+        return minimum + best;
+    }
+
+    /**
+     * @return the lowest value that the outcome is at most with the given probability
+     */
+    public long quantile(double probability) {
+        double sum = 0;
+        for (int i = 0; i < probabilities.length; i++) {
+            sum += probabilities[i];
+            if (sum >= probability)
+                return minimum + i;
+        }
+        return getMaximum();
+    }
+}
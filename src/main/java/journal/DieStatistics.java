@@ -0,0 +1,112 @@
+package journal;
+
+/**
+ * Statistics of every roll of one die size, taken at one point in time.
+ */
+public class DieStatistics {
+
+    private final int sides;
+    private final long rolls;
+    private final double mean;
+    private final double chiSquare;
+    private final long[] faceCounts;
+
+    DieStatistics(int sides, long rolls, double mean, double chiSquare, long[] faceCounts) {
+        this.sides = sides;
+        this.rolls = rolls;
+        this.mean = mean;
+        this.chiSquare = chiSquare;
+        this.faceCounts = faceCounts;
+    }
+
+    public int getSides() {
+        return sides;
+    }
+
+    public long getRolls() {
+        return rolls;
+    }
+
+    /**
+     * @return mean of the rolled faces, counting from 1
+     */
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * @return mean a fair die would have
+     */
+    public double getFairMean() {
+        return (sides + 1) / 2.0;
+    }
+
+    /**
+     * @return true if faces were counted individually, so the chi-square test is available
+     */
+    public boolean hasFaceCounts() {
+        return !Double.isNaN(chiSquare);
+    }
+
+    /**
+     * @return Pearson's chi-square statistic against a uniform die, NaN without face counts
+     */
+    public double getChiSquare() {
+        return chiSquare;
+    }
+
+    public int getDegreesOfFreedom() {
+        return sides - 1;
+    }
+
+    /**
+     * @return probability that a fair die deviates at least this much, NaN without face counts
+     */
+    public double getPValue() {
+        if (!hasFaceCounts() || rolls == 0)
+            return Double.NaN;
+        return chiSquareUpperTail(chiSquare, getDegreesOfFreedom());
+    }
+
+    /**
+     * The chi-square test is only reliable when every face is expected at least five times.
+     */
+    public boolean hasEnoughRolls() {
+        return rolls >= 5L * sides;
+    }
+
+    /**
+     * @return how often a face came up, counting from 1, or -1 if the counts were not included
+     */
+    public long getFaceCount(int face) {
+        return faceCounts != null ? faceCounts[face - 1] : -1;
+    }
+
+    public boolean hasFaceCountList() {
+        return faceCounts != null;
+    }
+
+    /**
+     * Upper tail of the chi-square distribution by the Wilson-Hilferty transformation to a normal variable, which is
+     * accurate to a few parts in a thousand from a handful of degrees of freedom up.
+     */
+    static double chiSquareUpperTail(double chiSquare, int degreesOfFreedom) {
+        if (degreesOfFreedom < 1)
+            return 1;
+        double variance = 2.0 / (9.0 * degreesOfFreedom);
+        double z = (Math.cbrt(chiSquare / degreesOfFreedom) - (1 - variance)) / Math.sqrt(variance);
+        return 0.5 * erfc(z / Math.sqrt(2));
+    }
+
+    /**
+     * Complementary error function with a fractional error below 1.2e-7, from Numerical Recipes.
+     */
+    static double erfc(double x) {
+        double z = Math.abs(x);
+        double t = 1 / (1 + 0.5 * z);
+        double result = t * Math.exp(-z * z - 1.26551223 + t * (1.00002368 + t * (0.37409196 + t * (0.09678418
+                + t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587
+                + t * (-0.82215223 + t * 0.17087277)))))))));
+        return x >= 0 ? result : 2 - result;
+    }
+}
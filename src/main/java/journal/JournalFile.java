@@ -0,0 +1,77 @@
+package journal;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * Layout of the roll journal files. There is one file per die size, named d{size}.rolls, holding a header followed by
+ * the rolled faces, zero based, in the order they were rolled. Every face takes the smallest of one, two or four
+ * bytes that fits the die size, so the n:th roll is at a fixed offset and a d6 roll costs a single byte.
+ *
+ * Header, big endian: magic, version, die size and face width in bytes, all ints.
+ */
+public final class JournalFile {
+
+    public static final int MAGIC = 0x524F4C4C; // "ROLL"
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 16;
+
+    private JournalFile() { }
+
+    public static Path path(Path directory, int dieSize) {
+        return directory.resolve("d" + dieSize + ".rolls");
+    }
+
+    /**
+     * @return bytes used per face of the given die size
+     */
+    public static int faceWidth(int dieSize) {
+        if (dieSize <= 1 << 8)
+            return 1;
+        if (dieSize <= 1 << 16)
+            return 2;
+        return 4;
+    }
+
+    static void writeHeader(ByteBuffer buffer, int dieSize) {
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(dieSize).putInt(faceWidth(dieSize));
+    }
+
+    /**
+     * @return true if the buffer starts with a valid header for the die size
+     */
+    public static boolean isValidHeader(ByteBuffer header, int dieSize) {
+        return header.remaining() >= HEADER_BYTES
+                && header.getInt(header.position()) == MAGIC
+                && header.getInt(header.position() + 4) == VERSION
+                && header.getInt(header.position() + 8) == dieSize
+                && header.getInt(header.position() + 12) == faceWidth(dieSize);
+    }
+
+    static void putFace(ByteBuffer buffer, int width, int face) {
+        switch (width) {
+            case 1:
+                buffer.put((byte) face);
+                break;
+            case 2:
+                buffer.putShort((short) face);
+                break;
+            default:
+                buffer.putInt(face);
+        }
+    }
+
+    /**
+     * Reads the face at an absolute position of the buffer.
+     */
+    public static int getFace(ByteBuffer buffer, int width, int position) {
+        switch (width) {
+            case 1:
+                return buffer.get(position) & 0xFF;
+            case 2:
+                return buffer.getShort(position) & 0xFFFF;
+            default:
+                return buffer.getInt(position);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package journal;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Notified by the {@link RollJournal} writer thread after rolls have been appended to a journal file.
+ */
+public interface JournalListener {
+
+    /**
+     * @param dieSize die size of the journal file
+     * @param faces the encoded faces that were written, between position and limit, valid only during the call
+     * @param filePosition offset in the file of the first written byte
+     */
+    void rollsWritten(int dieSize, ByteBuffer faces, long filePosition);
+}
@@ -0,0 +1,298 @@
+package journal;
+
+import metrics.MetricsReporter;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Journal of every die rolled by the bot. Rolling threads only put the results in a lock free ring, a background
+ * thread drains the ring on a schedule and appends the rolls to one {@link JournalFile} per die size through channels
+ * that stay open for the life of the bot. A roll therefore never waits on the disk, and a large roll becomes a single
+ * write instead of one file open per die.
+ *
+ * If the writer falls so far behind that the ring fills up, new rolls are counted as dropped rather than slowing down
+ * the rolling thread.
+ */
+@Component
+public class RollJournal implements MetricsReporter, DisposableBean {
+
+    private static final int BATCH_SIZE = 8192;
+    private static final int CHANNEL_BUFFER_BYTES = 64 * 1024;
+
+    private final Path directory;
+    private final RollRing ring;
+    private final ScheduledExecutorService writer;
+
+    // Only touched by the writer thread, or by destroy after the writer has stopped
+    private final long[] batch = new long[BATCH_SIZE];
+    private final Map<Integer, JournalChannel> channels = new HashMap<>();
+    private final Set<Integer> unopened = new HashSet<>();
+    private final List<JournalListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder lost = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+
+    /**
+     * @param directory folder of the journal files
+     * @param capacity number of rolls the ring holds between two flushes
+     * @param flushMillis time between two flushes
+     */
+    @Autowired
+    public RollJournal(@Value("${JOURNAL_DIR:./rolls}") String directory,
+                       @Value("${JOURNAL_CAPACITY:65536}") int capacity,
+                       @Value("${JOURNAL_FLUSH_MS:250}") long flushMillis) {
+        this.directory = Paths.get(directory);
+        this.ring = new RollRing(capacity);
+        this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "roll-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::flushQuietly, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Registers a listener that is called on the writer thread after every write, it must not block.
+     */
+    public void addListener(JournalListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Records a single roll.
+     *
+     * @param dieSize number of faces of the die
+     * @param face the rolled face, zero based
+     */
+    public void record(int dieSize, int face) {
+        if (ring.offer(dieSize, face))
+            recorded.increment();
+        else
+            dropped.increment();
+    }
+
+    /**
+     * Records a batch of rolls of the same die.
+     *
+     * @param dieSize number of faces of the dice
+     * @param faces the rolled faces, zero based
+     * @param offset index of the first roll in faces
+     * @param length number of rolls
+     */
+    public void record(int dieSize, int[] faces, int offset, int length) {
+        if (length == 0)
+            return;
+        if (ring.offer(dieSize, faces, offset, length))
+            recorded.add(length);
+        else
+            dropped.add(length);
+    }
+
+    private void flushQuietly() {
+        // An exception escaping a scheduled task would cancel every later flush.
+        try {
+            flush();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Drains the ring and writes everything in it. Only runs on the writer thread, or once it has stopped.
+     */
+    private void flush() {
+        unopened.clear();
+        int count;
+        while ((count = ring.drain(batch)) > 0) {
+            for (int i = 0; i < count; i++) {
+                int dieSize = RollRing.dieSize(batch[i]);
+                JournalChannel channel = channel(dieSize);
+                if (channel == null)
+                    lost.increment();
+                else
+                    channel.append(RollRing.face(batch[i]));
+            }
+        }
+
+        for (JournalChannel channel : channels.values()) {
+            channel.writeBuffered();
+        }
+        flushes.increment();
+    }
+
+    private JournalChannel channel(int dieSize) {
+        JournalChannel channel = channels.get(dieSize);
+        if (channel == null && !unopened.contains(dieSize)) {
+            try {
+                channel = new JournalChannel(dieSize, open(dieSize));
+                channels.put(dieSize, channel);
+            } catch (IOException e) {
+                // The rolls of this die size are lost until the next flush tries again
+                unopened.add(dieSize);
+                e.printStackTrace();
+            }
+        }
+        return channel;
+    }
+
+    /**
+     * Opens the journal of a die size for appending. A file with a foreign header is moved aside instead of appended
+     * to, and a roll that was only partly written when the bot last stopped is cut off.
+     */
+    private FileChannel open(int dieSize) throws IOException {
+
+        Files.createDirectories(directory);
+        Path path = JournalFile.path(directory, dieSize);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        long size = channel.size();
+        if (size > 0) {
+            ByteBuffer header = ByteBuffer.allocate(JournalFile.HEADER_BYTES);
+            while (header.hasRemaining() && channel.read(header, header.position()) > 0) { }
+            header.flip();
+
+            if (!JournalFile.isValidHeader(header, dieSize)) {
+                channel.close();
+                Path invalid = path.resolveSibling(path.getFileName() + ".invalid");
+                Files.move(path, invalid, StandardCopyOption.REPLACE_EXISTING);
+                System.out.println("Moved unreadable roll journal to " + invalid);
+                return open(dieSize);
+            }
+
+            int width = JournalFile.faceWidth(dieSize);
+            long complete = JournalFile.HEADER_BYTES + (size - JournalFile.HEADER_BYTES) / width * width;
+            if (complete != size)
+                channel.truncate(complete);
+            channel.position(complete);
+            return channel;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(JournalFile.HEADER_BYTES);
+        JournalFile.writeHeader(header, dieSize);
+        header.flip();
+        writeFully(channel, header);
+        return channel;
+    }
+
+    /**
+     * Stops the writer and writes whatever is still in the ring before the channels are closed. The ring and the
+     * channels only take one writer, so if the writer thread cannot be stopped they are left to it.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        writer.shutdown();
+        if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+            writer.shutdownNow();
+            if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+                System.out.println("Roll journal writer did not stop, " + ring.size() + " rolls are not written");
+                return;
+            }
+        }
+
+        flush();
+        for (JournalChannel channel : channels.values()) {
+            channel.close();
+        }
+        channels.clear();
+    }
+
+    @Override
+    public String reportMetrics() {
+        return String.format("roll journal: %d recorded, %d written, %d dropped, %d lost, %d pending, %d files, "
+                        + "%d flushes",
+                recorded.sum(), written.sum(), dropped.sum(), lost.sum(), ring.size(), channels.size(),
+                flushes.sum());
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * An open journal file with a buffer of encoded rolls that have not been written yet.
+     */
+    private final class JournalChannel {
+
+        private final int dieSize;
+        private final int width;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(CHANNEL_BUFFER_BYTES);
+
+        private JournalChannel(int dieSize, FileChannel channel) {
+            this.dieSize = dieSize;
+            this.width = JournalFile.faceWidth(dieSize);
+            this.channel = channel;
+        }
+
+        private void append(int face) {
+            if (buffer.remaining() < width)
+                writeBuffered();
+            JournalFile.putFace(buffer, width, face);
+        }
+
+        private void writeBuffered() {
+            if (buffer.position() == 0)
+                return;
+            buffer.flip();
+            int rolls = buffer.remaining() / width;
+            try {
+                long position = channel.position();
+                writeFully(channel, buffer);
+                written.add(rolls);
+
+                for (JournalListener listener : listeners) {
+                    buffer.rewind();
+                    try {
+                        listener.rollsWritten(dieSize, buffer, position);
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+            } catch (IOException e) {
+                lost.add(rolls);
+                e.printStackTrace();
+            }
+            buffer.clear();
+        }
+
+        private void close() {
+            try {
+                channel.force(false);
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
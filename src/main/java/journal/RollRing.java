@@ -0,0 +1,107 @@
+package journal;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock free ring of rolls with many producers and a single consumer. Producers claim slots by moving the tail
+ * with a compare and set and publish each slot after writing it, the consumer reads published slots in order. A
+ * full ring rejects rolls instead of blocking, the roll itself has already happened and must never wait on logging.
+ *
+ * Every roll is packed into a long, the die size in the high half and the rolled face in the low half.
+ */
+class RollRing {
+
+    private final int mask;
+    private final long[] rolls;
+    private final AtomicLongArray published;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    /**
+     * @param capacity number of slots, rounded up to a power of two
+     */
+    RollRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.rolls = new long[size];
+        this.published = new AtomicLongArray(size);
+    }
+
+    static long pack(int dieSize, int face) {
+        return ((long) dieSize << 32) | (face & 0xFFFFFFFFL);
+    }
+
+    static int dieSize(long roll) {
+        return (int) (roll >>> 32);
+    }
+
+    static int face(long roll) {
+        return (int) roll;
+    }
+
+    /**
+     * Adds a single roll.
+     *
+     * @return false if the ring is full
+     */
+    boolean offer(int dieSize, int face) {
+        long claimed;
+        do {
+            claimed = tail.get();
+            if (claimed - head >= rolls.length)
+                return false;
+        } while (!tail.compareAndSet(claimed, claimed + 1));
+
+        int slot = (int) claimed & mask;
+        rolls[slot] = pack(dieSize, face);
+        published.lazySet(slot, claimed + 1);
+        return true;
+    }
+
+    /**
+     * Adds a batch of rolls of one die size, either all of them or none.
+     *
+     * @return false if the ring has no room for the batch
+     */
+    boolean offer(int dieSize, int[] faces, int offset, int length) {
+        long claimed;
+        do {
+            claimed = tail.get();
+            if (claimed + length - head > rolls.length)
+                return false;
+        } while (!tail.compareAndSet(claimed, claimed + length));
+
+        for (int i = 0; i < length; i++) {
+            long sequence = claimed + i;
+            int slot = (int) sequence & mask;
+            rolls[slot] = pack(dieSize, faces[offset + i]);
+            // Publishing the sequence number after the value makes the value visible to the consumer reading it.
+            published.lazySet(slot, sequence + 1);
+        }
+        return true;
+    }
+
+    /**
+     * Moves published rolls into the batch, only the single consumer thread may call this.
+     *
+     * @return number of rolls moved, stops early at a slot that is claimed but not yet published
+     */
+    int drain(long[] batch) {
+        long next = head;
+        int count = 0;
+        while (count < batch.length) {
+            int slot = (int) next & mask;
+            if (published.get(slot) != next + 1)
+                break;
+            batch[count++] = rolls[slot];
+            next++;
+        }
+        head = next;
+        return count;
+    }
+
+    int size() {
+        return (int) (tail.get() - head);
+    }
+}
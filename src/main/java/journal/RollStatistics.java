@@ -0,0 +1,176 @@
+package journal;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Running statistics over the roll journal. The journal of a die size is mapped and folded into a tally the first time
+ * it is asked for, from then on the tally follows the journal by listening to its writes, so a query costs the same
+ * no matter how many rolls have been made.
+ *
+ * Dice with up to {@link #MAX_COUNTED_SIDES} sides get a count per face. Along with it the tally keeps the sum of the
+ * squared face counts, which is all Pearson's chi-square statistic against a fair die needs.
+ */
+@Component
+public class RollStatistics implements JournalListener {
+
+    public static final int MAX_COUNTED_SIDES = 1 << 16;
+
+    /**
+     * Dice with up to this many sides have every face count listed, only their snapshots copy the counts.
+     */
+    public static final int LISTED_FACES = 20;
+    private static final long MAP_CHUNK_BYTES = 1L << 30;
+
+    private final Path directory;
+    private final Map<Integer, Tally> tallies = new ConcurrentHashMap<>();
+
+    @Autowired
+    public RollStatistics(RollJournal rollJournal) {
+        this.directory = rollJournal.getDirectory();
+        rollJournal.addListener(this);
+    }
+
+    /**
+     * @param sides the die size
+     * @return statistics of every journaled roll of the die
+     * @throws IOException if the journal of the die could not be read
+     */
+    public DieStatistics get(int sides) throws IOException {
+        Tally tally = tallies.get(sides);
+        if (tally == null) {
+            // Dice that were never rolled get no tally, so asking about them costs no memory
+            if (!Files.exists(JournalFile.path(directory, sides)))
+                return new Tally(sides).snapshot();
+            tally = tallies.computeIfAbsent(sides, Tally::new);
+        }
+        synchronized (tally) {
+            tally.load();
+            return tally.snapshot();
+        }
+    }
+
+    @Override
+    public void rollsWritten(int dieSize, ByteBuffer faces, long filePosition) {
+        Tally tally = tallies.get(dieSize);
+        if (tally != null) {
+            synchronized (tally) {
+                tally.append(faces, filePosition);
+            }
+        }
+    }
+
+    /**
+     * Counts of one die size, guarded by its own monitor.
+     */
+    private final class Tally {
+
+        private final int sides;
+        private final int width;
+        private final long[] counts;
+
+        private boolean loaded;
+        private long consumed;
+        private long rolls;
+        private long faceSum;
+        private long squaredCountSum;
+
+        private Tally(int sides) {
+            this.sides = sides;
+            this.width = JournalFile.faceWidth(sides);
+            this.counts = sides <= MAX_COUNTED_SIDES ? new long[sides] : null;
+        }
+
+        /**
+         * Folds in the journal file as it is now, unless that was done already.
+         */
+        private void load() throws IOException {
+            if (loaded)
+                return;
+
+            reset();
+            try (FileChannel channel = FileChannel.open(JournalFile.path(directory, sides), StandardOpenOption.READ)) {
+                long size = channel.size();
+                ByteBuffer header = ByteBuffer.allocate(JournalFile.HEADER_BYTES);
+                while (header.hasRemaining() && channel.read(header, header.position()) > 0) { }
+                header.flip();
+
+                // The journal moves a foreign file aside and starts over, so it counts as empty
+                if (JournalFile.isValidHeader(header, sides)) {
+                    long end = JournalFile.HEADER_BYTES + (size - JournalFile.HEADER_BYTES) / width * width;
+                    for (long position = consumed; position < end; position += MAP_CHUNK_BYTES) {
+                        long length = Math.min(MAP_CHUNK_BYTES, end - position);
+                        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                        fold(mapped, 0, (int) length);
+                    }
+                    consumed = end;
+                }
+            } catch (NoSuchFileException e) {
+                // Nothing rolled yet, the first write is picked up by append
+            }
+            loaded = true;
+        }
+
+        private void append(ByteBuffer faces, long filePosition) {
+            if (!loaded)
+                return;
+            if (filePosition > consumed) {
+                // Writes were missed, the next query maps the file again
+                loaded = false;
+                return;
+            }
+
+            // A write that happened while the file was being loaded may already be counted
+            long skip = consumed - filePosition;
+            if (skip >= faces.remaining())
+                return;
+            fold(faces, faces.position() + (int) skip, faces.limit());
+            consumed = filePosition + faces.remaining();
+        }
+
+        private void fold(ByteBuffer faces, int from, int to) {
+            for (int position = from; position < to; position += width) {
+                int face = JournalFile.getFace(faces, width, position);
+                if (face < 0 || face >= sides)
+                    continue;
+                rolls++;
+                faceSum += face;
+                if (counts != null) {
+                    // (c + 1)^2 - c^2 keeps the sum of squares current without a pass over the faces
+                    long count = counts[face]++;
+                    squaredCountSum += 2 * count + 1;
+                }
+            }
+        }
+
+        private void reset() {
+            consumed = JournalFile.HEADER_BYTES;
+            rolls = 0;
+            faceSum = 0;
+            squaredCountSum = 0;
+            if (counts != null)
+                Arrays.fill(counts, 0);
+        }
+
+        private DieStatistics snapshot() {
+            double mean = rolls > 0 ? (double) faceSum / rolls + 1 : Double.NaN;
+            // Sum of (c - n/k)^2 / (n/k) over the faces, expanded to k/n * sum of c^2 - n
+            double chiSquare = counts == null ? Double.NaN
+                    : rolls == 0 ? 0 : (double) sides * squaredCountSum / rolls - rolls;
+            long[] listed = counts != null && sides <= LISTED_FACES ? counts.clone() : null;
+            return new DieStatistics(sides, rolls, mean, chiSquare, listed);
+        }
+    }
+}
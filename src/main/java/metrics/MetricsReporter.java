@@ -0,0 +1,12 @@
+package metrics;
+
+/**
+ * Implemented by components that keep runtime metrics, every reporter is listed by the !metrics command.
+ */
+public interface MetricsReporter {
+
+    /**
+     * @return a short, human readable summary of the current metrics, one line per metric
+     */
+    String reportMetrics();
+}
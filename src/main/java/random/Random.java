@@ -3,4 +3,15 @@ package random;
 public interface Random {
 
     public int nextInt(int upperLimit);
+
+    /**
+     * Fills part of an array with random numbers in one call, so rolling many dice costs one call instead of one per
+     * die.
+     *
+     * @param upperLimit exclusive upper limit of every number
+     * @param out array that receives the numbers
+     * @param offset index of the first number in the array
+     * @param length how many numbers to generate
+     */
+    public void nextInts(int upperLimit, int[] out, int offset, int length);
 }
@@ -0,0 +1,30 @@
+package random;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Picks the random number generator named by RANDOM in bot.properties: java, threadlocal, splittable or xoroshiro.
+ */
+@Configuration
+public class RandomConfig {
+
+    @Bean
+    public Random random(@Value("${RANDOM:splittable}") String generator){
+
+        switch (generator.trim().toLowerCase()) {
+            case "java":
+                return new RandomRandom();
+            case "threadlocal":
+                return new ThreadLocalRandomRandom();
+            case "splittable":
+                return new SplittableRandomRandom();
+            case "xoroshiro":
+                return new XoroshiroRandom();
+            default:
+                throw new IllegalArgumentException("Unknown RANDOM generator '" + generator
+                        + "', expected java, threadlocal, splittable or xoroshiro");
+        }
+    }
+}
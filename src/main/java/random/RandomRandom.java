@@ -1,10 +1,10 @@
 package random;
 
-import org.springframework.stereotype.Component;
-
 import java.util.Random;
 
-@Component
+/**
+ * Shares one java.util.Random between all threads, every number is a compare and set on its single seed.
+ */
 public class RandomRandom implements random.Random {
 
     Random random;
@@ -17,4 +17,10 @@ public class RandomRandom implements random.Random {
         return random.nextInt(upperLimit);
     }
 
+    public void nextInts(int upperLimit, int[] out, int offset, int length){
+        for(int i = offset; i < offset + length; i++) {
+            out[i] = random.nextInt(upperLimit);
+        }
+    }
+
 }
@@ -0,0 +1,38 @@
+package random;
+
+import java.util.SplittableRandom;
+
+/**
+ * Gives every thread its own SplittableRandom, split off one root generator so the streams are independent.
+ */
+public class SplittableRandomRandom implements Random {
+
+    private final SplittableRandom root;
+    private final ThreadLocal<SplittableRandom> streams = ThreadLocal.withInitial(this::split);
+
+    public SplittableRandomRandom(){
+        this.root = new SplittableRandom();
+    }
+
+    /**
+     * Repeats the same numbers for the same seed, as long as the threads ask for their first number in the same order.
+     */
+    SplittableRandomRandom(long seed){
+        this.root = new SplittableRandom(seed);
+    }
+
+    private synchronized SplittableRandom split(){
+        return root.split();
+    }
+
+    public int nextInt(int upperLimit){
+        return streams.get().nextInt(upperLimit);
+    }
+
+    public void nextInts(int upperLimit, int[] out, int offset, int length){
+        SplittableRandom random = streams.get();
+        for(int i = offset; i < offset + length; i++) {
+            out[i] = random.nextInt(upperLimit);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package random;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Uses the generator the JDK keeps per thread, threads never share any state.
+ */
+public class ThreadLocalRandomRandom implements Random {
+
+    public int nextInt(int upperLimit){
+        return ThreadLocalRandom.current().nextInt(upperLimit);
+    }
+
+    public void nextInts(int upperLimit, int[] out, int offset, int length){
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for(int i = offset; i < offset + length; i++) {
+            out[i] = random.nextInt(upperLimit);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package random;
+
+import java.util.SplittableRandom;
+
+/**
+ * xoroshiro128++ with one generator per thread. Bounded numbers use Lemire's multiply and shift method, which only
+ * rejects a sample in the rare case that keeping it would bias the result, so it needs no division in the common case.
+ */
+public class XoroshiroRandom implements Random {
+
+    private final SplittableRandom seeds;
+    private final ThreadLocal<State> states = ThreadLocal.withInitial(this::newState);
+
+    public XoroshiroRandom(){
+        this.seeds = new SplittableRandom();
+    }
+
+    /**
+     * Repeats the same numbers for the same seed, as long as the threads ask for their first number in the same order.
+     */
+    XoroshiroRandom(long seed){
+        this.seeds = new SplittableRandom(seed);
+    }
+
+    private synchronized State newState(){
+        long first = seeds.nextLong();
+        long second = seeds.nextLong();
+        // The all zero state would only ever produce zeros
+        if(first == 0 && second == 0)
+            second = 0x9E3779B97F4A7C15L;
+        return new State(first, second);
+    }
+
+    public int nextInt(int upperLimit){
+        return states.get().nextInt(upperLimit);
+    }
+
+    public void nextInts(int upperLimit, int[] out, int offset, int length){
+        State state = states.get();
+        for(int i = offset; i < offset + length; i++) {
+            out[i] = state.nextInt(upperLimit);
+        }
+    }
+
+    private static final class State {
+        private long s0;
+        private long s1;
+
+        private State(long s0, long s1) {
+            this.s0 = s0;
+            this.s1 = s1;
+        }
+
+        private long nextLong() {
+            long first = s0;
+            long second = s1;
+            long result = Long.rotateLeft(first + second, 17) + first;
+
+            second ^= first;
+            s0 = Long.rotateLeft(first, 49) ^ second ^ (second << 21);
+            s1 = Long.rotateLeft(second, 28);
+            return result;
+        }
+
+        private int nextInt(int bound) {
+            if (bound <= 0)
+                throw new IllegalArgumentException("bound must be positive");
+
+            long product = (nextLong() >>> 32) * bound;
+            long low = product & 0xFFFFFFFFL;
+            if (low < bound) {
+                long threshold = (0x100000000L - bound) % bound;
+                while (low < threshold) {
+                    product = (nextLong() >>> 32) * bound;
+                    low = product & 0xFFFFFFFFL;
+                }
+            }
+            return (int) (product >>> 32);
+        }
+    }
+}
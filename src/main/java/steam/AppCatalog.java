@@ -0,0 +1,123 @@
+package steam;
+
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Column store of the steam app list. App ids live in one int column and all names are packed back to back into one
+ * char column with an offset table, so the whole catalog is three buffers instead of one object tree per app. The
+ * buffers are either plain heap arrays or views of a memory mapped {@link CatalogSnapshot}.
+ */
+public class AppCatalog {
+
+    private final IntBuffer appIds;
+    private final IntBuffer nameOffsets;
+    private final CharBuffer names;
+
+    AppCatalog(IntBuffer appIds, IntBuffer nameOffsets, CharBuffer names) {
+        this.appIds = appIds;
+        this.nameOffsets = nameOffsets;
+        this.names = names;
+    }
+
+    /**
+     * @return number of apps in the catalog
+     */
+    public int size() {
+        return appIds.limit();
+    }
+
+    public int appId(int entry) {
+        return appIds.get(entry);
+    }
+
+    public int nameLength(int entry) {
+        return nameOffsets.get(entry + 1) - nameOffsets.get(entry);
+    }
+
+    /**
+     * @return the character of the name at the given position, lower cased
+     */
+    public char normalizedChar(int entry, int position) {
+        return Character.toLowerCase(names.get(nameOffsets.get(entry) + position));
+    }
+
+    public String name(int entry) {
+        int start = nameOffsets.get(entry);
+        return names.subSequence(start, start + nameLength(entry)).toString();
+    }
+
+    /**
+     * Case insensitive substring check done directly on the packed names, without creating a String.
+     *
+     * @param entry catalog entry to check
+     * @param query lower case text to look for
+     * @return true if the name of the entry contains the query
+     */
+    public boolean nameContains(int entry, CharSequence query) {
+        int start = nameOffsets.get(entry);
+        int last = nameOffsets.get(entry + 1) - query.length();
+        int queryLength = query.length();
+
+        outer:
+        for (int i = start; i <= last; i++) {
+            for (int j = 0; j < queryLength; j++) {
+                if (Character.toLowerCase(names.get(i + j)) != query.charAt(j))
+                    continue outer;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    IntBuffer appIds() {
+        return appIds.duplicate();
+    }
+
+    IntBuffer nameOffsets() {
+        return nameOffsets.duplicate();
+    }
+
+    CharBuffer names() {
+        return names.duplicate();
+    }
+
+    /**
+     * Grows the columns while the app list is being read, nothing is kept per app besides the column values.
+     */
+    public static class Builder {
+
+        private int[] appIds = new int[1024];
+        private int[] nameOffsets = new int[1025];
+        private char[] names = new char[16 * 1024];
+        private int size;
+
+        public Builder add(int appId, CharSequence name) {
+            if (size == appIds.length) {
+                appIds = Arrays.copyOf(appIds, size * 2);
+                nameOffsets = Arrays.copyOf(nameOffsets, size * 2 + 1);
+            }
+
+            int offset = nameOffsets[size];
+            int end = offset + name.length();
+            if (end > names.length) {
+                names = Arrays.copyOf(names, Math.max(end, names.length * 2));
+            }
+            for (int i = 0; i < name.length(); i++) {
+                names[offset + i] = name.charAt(i);
+            }
+
+            appIds[size] = appId;
+            nameOffsets[++size] = end;
+            return this;
+        }
+
+        public AppCatalog build() {
+            return new AppCatalog(
+                    IntBuffer.wrap(Arrays.copyOf(appIds, size)),
+                    IntBuffer.wrap(Arrays.copyOf(nameOffsets, size + 1)),
+                    CharBuffer.wrap(Arrays.copyOf(names, nameOffsets[size])));
+        }
+    }
+}
@@ -0,0 +1,437 @@
+package steam;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Trigram inverted index over steam app names. Every three character window of a lower cased name is hashed into an
+ * int key, and each key points to the sorted list of entries containing it. A substring query only has to intersect
+ * the posting lists of its own trigrams and verify the few candidates left, instead of scanning every app.
+ *
+ * Hash collisions only ever add candidates, never remove them, so every candidate is verified against the name itself.
+ */
+public class AppIndex {
+
+    private final AppCatalog catalog;
+    private final IntBuffer entries;
+
+    private final IntBuffer keys;
+    private final IntBuffer postingStarts;
+    private final IntBuffer postings;
+
+    AppIndex(AppCatalog catalog, IntBuffer entries, IntBuffer keys, IntBuffer postingStarts, IntBuffer postings) {
+        this.catalog = catalog;
+        this.entries = entries;
+        this.keys = keys;
+        this.postingStarts = postingStarts;
+        this.postings = postings;
+    }
+
+    /**
+     * Builds the index over the catalog entries accepted by the filter.
+     *
+     * @param catalog the apps to index
+     * @param searchable decides which catalog entries can be found at all
+     * @return the finished index
+     */
+    public static AppIndex build(AppCatalog catalog, IntPredicate searchable) {
+
+        int[] entries = new int[catalog.size()];
+        int entryCount = 0;
+        int total = 0;
+        for (int entry = 0; entry < catalog.size(); entry++) {
+            if (searchable.test(entry)) {
+                entries[entryCount++] = entry;
+                total += Math.max(0, catalog.nameLength(entry) - 2);
+            }
+        }
+        entries = Arrays.copyOf(entries, entryCount);
+
+        // Key in the high half and entry in the low half, so one sort groups the postings of a key in entry order.
+        long[] pairs = new long[total];
+        int count = 0;
+        for (int entry : entries) {
+            int length = catalog.nameLength(entry);
+            for (int i = 0; i + 2 < length; i++) {
+                pairs[count++] = ((long) trigram(catalog, entry, i) << 32) | entry;
+            }
+        }
+        Arrays.sort(pairs, 0, count);
+
+        int[] postings = new int[count];
+        int[] keys = new int[count];
+        int[] postingStarts = new int[count + 1];
+        int postingCount = 0;
+        int keyCount = 0;
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            long pair = pairs[i];
+            if (i > 0 && pair == previous) {
+                continue;
+            }
+            int key = (int) (pair >> 32);
+            if (keyCount == 0 || keys[keyCount - 1] != key) {
+                keys[keyCount] = key;
+                postingStarts[keyCount] = postingCount;
+                keyCount++;
+            }
+            postings[postingCount++] = (int) pair;
+            previous = pair;
+        }
+        postingStarts[keyCount] = postingCount;
+
+        return new AppIndex(catalog, IntBuffer.wrap(entries),
+                IntBuffer.wrap(Arrays.copyOf(keys, keyCount)),
+                IntBuffer.wrap(Arrays.copyOf(postingStarts, keyCount + 1)),
+                IntBuffer.wrap(Arrays.copyOf(postings, postingCount)));
+    }
+
+    public AppCatalog catalog() {
+        return catalog;
+    }
+
+    /**
+     * @return number of searchable apps
+     */
+    public int size() {
+        return entries.limit();
+    }
+
+    /**
+     * Finds every searchable app whose name contains the query, ignoring case.
+     *
+     * @param query normalized (lower case) full or partial app name
+     * @return app ids of the matches in catalog order, empty if nothing matches
+     */
+    public List<String> search(String query) {
+
+        List<String> appIDs = new ArrayList<>();
+
+        if (query.length() < 3) {
+            // Too short to have a trigram, these are rare enough that a scan is fine.
+            for (int i = 0; i < entries.limit(); i++) {
+                int entry = entries.get(i);
+                if (catalog.nameContains(entry, query))
+                    appIDs.add(Integer.toString(catalog.appId(entry)));
+            }
+            return appIDs;
+        }
+
+        int termCount = query.length() - 2;
+        int[] starts = new int[termCount];
+        int[] ends = new int[termCount];
+        for (int i = 0; i < termCount; i++) {
+            int slot = findKey(trigram(query, i));
+            if (slot < 0)
+                return appIDs;
+            starts[i] = postingStarts.get(slot);
+            ends[i] = postingStarts.get(slot + 1);
+        }
+
+        // Drive the intersection from the shortest list and walk the others forward alongside it.
+        int shortest = 0;
+        for (int i = 1; i < termCount; i++) {
+            if (ends[i] - starts[i] < ends[shortest] - starts[shortest])
+                shortest = i;
+        }
+
+        candidates:
+        for (int p = starts[shortest]; p < ends[shortest]; p++) {
+            int entry = postings.get(p);
+            for (int i = 0; i < termCount; i++) {
+                if (i == shortest)
+                    continue;
+                int position = advance(starts[i], ends[i], entry);
+                starts[i] = position;
+                if (position == ends[i])
+                    break candidates;
+                if (postings.get(position) != entry)
+                    continue candidates;
+            }
+            if (catalog.nameContains(entry, query))
+                appIDs.add(Integer.toString(catalog.appId(entry)));
+        }
+
+        return appIDs;
+    }
+
+    /**
+     * Finds the apps whose names best match the query, tolerating a few typos. Candidates are the apps sharing
+     * enough trigrams with the query to possibly be within the allowed edit distance, each is then scored by the edit
+     * distance of the closest substring of its name, and only the best ones are kept in a bounded heap.
+     *
+     * Queries of up to five characters must match exactly, longer ones allow one edit and from nine characters on two.
+     *
+     * @param query normalized (lower case) full or partial app name, only the first 64 characters are used
+     * @param limit maximum number of results
+     * @return app ids of the best matches, best first
+     */
+    public List<String> searchRanked(String query, int limit) {
+
+        if (query.length() > Long.SIZE)
+            query = query.substring(0, Long.SIZE);
+
+        RankedMatches matches = new RankedMatches(limit);
+        if (query.length() < 3) {
+            for (int i = 0; i < entries.limit(); i++) {
+                int entry = entries.get(i);
+                if (catalog.nameContains(entry, query))
+                    matches.offer(score(entry, 0, query), entry);
+            }
+            return matches.appIds(catalog);
+        }
+
+        int termCount = query.length() - 2;
+        int maxEdits = Math.min(2, (query.length() - 3) / 3);
+        // Every edit destroys at most three trigrams of the query, so a match keeps at least this many.
+        int minShared = termCount - 3 * maxEdits;
+
+        CandidateCounts counts = CANDIDATE_COUNTS.get();
+        counts.reset(catalog.size());
+        for (int i = 0; i < termCount; i++) {
+            int slot = findKey(trigram(query, i));
+            if (slot < 0)
+                continue;
+            for (int p = postingStarts.get(slot); p < postingStarts.get(slot + 1); p++) {
+                counts.increment(postings.get(p));
+            }
+        }
+
+        Matcher matcher = new Matcher(query);
+        for (int i = 0; i < counts.touchedCount; i++) {
+            int entry = counts.touched[i];
+            if (counts.counts[entry] < minShared)
+                continue;
+            int distance = matcher.distance(catalog, entry);
+            if (distance <= maxEdits)
+                matches.offer(score(entry, distance, query), entry);
+        }
+        counts.clear();
+
+        return matches.appIds(catalog);
+    }
+
+    /**
+     * Lower is better, edits weigh the most, then whether the name starts with the query and finally the name length
+     * so the shortest, closest title comes first.
+     */
+    private int score(int entry, int distance, String query) {
+        int length = catalog.nameLength(entry);
+        boolean prefix = length >= query.length();
+        for (int i = 0; prefix && i < query.length(); i++) {
+            prefix = catalog.normalizedChar(entry, i) == query.charAt(i);
+        }
+        return distance * 2048 + (prefix ? 0 : 1024) + Math.min(length, 1023);
+    }
+
+    private static final ThreadLocal<CandidateCounts> CANDIDATE_COUNTS = ThreadLocal.withInitial(CandidateCounts::new);
+
+    /**
+     * Shared trigram count per catalog entry, reused between queries so only the touched entries are reset.
+     */
+    private static final class CandidateCounts {
+        private int[] counts = new int[0];
+        private int[] touched = new int[1024];
+        private int touchedCount;
+
+        private void reset(int size) {
+            if (counts.length < size)
+                counts = new int[size];
+            touchedCount = 0;
+        }
+
+        private void increment(int entry) {
+            if (counts[entry]++ == 0) {
+                if (touchedCount == touched.length)
+                    touched = Arrays.copyOf(touched, touchedCount * 2);
+                touched[touchedCount++] = entry;
+            }
+        }
+
+        private void clear() {
+            for (int i = 0; i < touchedCount; i++) {
+                counts[touched[i]] = 0;
+            }
+            touchedCount = 0;
+        }
+    }
+
+    /**
+     * Myers' bit parallel approximate matching, gives the smallest edit distance between the query and any substring
+     * of a name in a single pass over the name.
+     */
+    private static final class Matcher {
+        private final String query;
+        private final long[] asciiMasks = new long[128];
+        private final long lastBit;
+
+        private Matcher(String query) {
+            this.query = query;
+            this.lastBit = 1L << (query.length() - 1);
+            for (int i = 0; i < query.length(); i++) {
+                char c = query.charAt(i);
+                if (c < 128)
+                    asciiMasks[c] |= 1L << i;
+            }
+        }
+
+        private long mask(char c) {
+            if (c < 128)
+                return asciiMasks[c];
+            long mask = 0;
+            for (int i = 0; i < query.length(); i++) {
+                if (query.charAt(i) == c)
+                    mask |= 1L << i;
+            }
+            return mask;
+        }
+
+        private int distance(AppCatalog catalog, int entry) {
+            long positive = -1L;
+            long negative = 0;
+            int score = query.length();
+            int best = score;
+
+            int length = catalog.nameLength(entry);
+            for (int i = 0; i < length; i++) {
+                long equal = mask(catalog.normalizedChar(entry, i));
+                long vertical = equal | negative;
+                long horizontal = (((equal & positive) + positive) ^ positive) | equal;
+                long horizontalPositive = negative | ~(horizontal | positive);
+                long horizontalNegative = positive & horizontal;
+
+                if ((horizontalPositive & lastBit) != 0)
+                    score++;
+                else if ((horizontalNegative & lastBit) != 0)
+                    score--;
+                best = Math.min(best, score);
+
+                horizontalPositive <<= 1;
+                horizontalNegative <<= 1;
+                positive = horizontalNegative | ~(vertical | horizontalPositive);
+                negative = horizontalPositive & vertical;
+            }
+            return best;
+        }
+    }
+
+    /**
+     * Bounded max heap of packed (score, entry) pairs, the worst kept match sits on top and is replaced by better ones.
+     */
+    private static final class RankedMatches {
+        private final long[] heap;
+        private int size;
+
+        private RankedMatches(int limit) {
+            this.heap = new long[Math.max(0, limit)];
+        }
+
+        private void offer(int score, int entry) {
+            long match = ((long) score << 32) | entry;
+            if (size < heap.length) {
+                int i = size++;
+                while (i > 0 && heap[(i - 1) / 2] < match) {
+                    heap[i] = heap[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+                heap[i] = match;
+            } else if (size > 0 && match < heap[0]) {
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size)
+                        break;
+                    if (child + 1 < size && heap[child + 1] > heap[child])
+                        child++;
+                    if (heap[child] <= match)
+                        break;
+                    heap[i] = heap[child];
+                    i = child;
+                }
+                heap[i] = match;
+            }
+        }
+
+        private List<String> appIds(AppCatalog catalog) {
+            long[] sorted = Arrays.copyOf(heap, size);
+            Arrays.sort(sorted);
+            List<String> appIds = new ArrayList<>(size);
+            for (long match : sorted) {
+                appIds.add(Integer.toString(catalog.appId((int) match)));
+            }
+            return appIds;
+        }
+    }
+
+    /**
+     * Galloping search for the first posting in [from, to) that is not smaller than the entry.
+     */
+    private int advance(int from, int to, int entry) {
+        int step = 1;
+        int low = from;
+        int high = from;
+        while (high < to && postings.get(high) < entry) {
+            low = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        high = Math.min(high, to);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (postings.get(middle) < entry)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    private int findKey(int key) {
+        int low = 0;
+        int high = keys.limit() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int value = keys.get(middle);
+            if (value < key)
+                low = middle + 1;
+            else if (value > key)
+                high = middle - 1;
+            else
+                return middle;
+        }
+        return -1;
+    }
+
+    IntBuffer entries() {
+        return entries.duplicate();
+    }
+
+    IntBuffer keys() {
+        return keys.duplicate();
+    }
+
+    IntBuffer postingStarts() {
+        return postingStarts.duplicate();
+    }
+
+    IntBuffer postings() {
+        return postings.duplicate();
+    }
+
+    private static int trigram(AppCatalog catalog, int entry, int offset) {
+        int hash = catalog.normalizedChar(entry, offset);
+        hash = hash * 31 + catalog.normalizedChar(entry, offset + 1);
+        hash = hash * 31 + catalog.normalizedChar(entry, offset + 2);
+        return hash;
+    }
+
+    private static int trigram(CharSequence name, int offset) {
+        int hash = name.charAt(offset);
+        hash = hash * 31 + name.charAt(offset + 1);
+        hash = hash * 31 + name.charAt(offset + 2);
+        return hash;
+    }
+}
@@ -0,0 +1,238 @@
+package steam;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Streaming reader for the GetAppList response. The JSON is tokenized straight from the stream and every object
+ * with an "appid" and a "name" is appended to the catalog as soon as it closes, so the response is never held in
+ * memory as a whole, neither as text nor as a JSON tree.
+ */
+public class AppListParser {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Reader in;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    private final StringBuilder text = new StringBuilder();
+    private final StringBuilder name = new StringBuilder();
+
+    private AppListParser(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads a GetAppList response into a catalog.
+     *
+     * @param in the response body, it is read to the end but not closed
+     * @return catalog of every app in the response, in response order
+     * @throws IOException if reading fails or the response is not valid JSON
+     */
+    public static AppCatalog parse(Reader in) throws IOException {
+        AppCatalog.Builder builder = new AppCatalog.Builder();
+        new AppListParser(in).readValue(builder);
+        return builder.build();
+    }
+
+    /**
+     * Reads any JSON value, every object on the way is checked for an app.
+     */
+    private void readValue(AppCatalog.Builder builder) throws IOException {
+        int c = nextNonWhitespace();
+        switch (c) {
+            case '{':
+                readObject(builder);
+                break;
+            case '[':
+                readArray(builder);
+                break;
+            case '"':
+                readString();
+                break;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9') || c == 't' || c == 'f' || c == 'n') {
+                    position--;
+                    readLiteral();
+                } else {
+                    throw syntaxError(c);
+                }
+        }
+    }
+
+    private void readArray(AppCatalog.Builder builder) throws IOException {
+        int c = nextNonWhitespace();
+        if (c == ']')
+            return;
+        position--;
+
+        while (true) {
+            readValue(builder);
+            c = nextNonWhitespace();
+            if (c == ']')
+                return;
+            if (c != ',')
+                throw syntaxError(c);
+        }
+    }
+
+    private void readObject(AppCatalog.Builder builder) throws IOException {
+        long appId = -1;
+        boolean hasName = false;
+
+        int c = nextNonWhitespace();
+        if (c == '}')
+            return;
+        position--;
+
+        while (true) {
+            c = nextNonWhitespace();
+            if (c != '"')
+                throw syntaxError(c);
+            readString();
+
+            c = nextNonWhitespace();
+            if (c != ':')
+                throw syntaxError(c);
+
+            if (isText("appid")) {
+                c = nextNonWhitespace();
+                position--;
+                appId = c == '"' ? parseQuotedNumber() : parseNumber(readLiteral());
+            } else if (isText("name")) {
+                c = nextNonWhitespace();
+                if (c != '"')
+                    throw syntaxError(c);
+                readString();
+                name.setLength(0);
+                name.append(text);
+                hasName = true;
+            } else {
+                readValue(builder);
+            }
+
+            c = nextNonWhitespace();
+            if (c == '}')
+                break;
+            if (c != ',')
+                throw syntaxError(c);
+        }
+
+        if (hasName && appId >= 0)
+            builder.add((int) appId, name);
+    }
+
+    private long parseQuotedNumber() throws IOException {
+        nextNonWhitespace();
+        readString();
+        return parseNumber(text);
+    }
+
+    /**
+     * @return the app id, or -1 if it does not fit an int, which leaves just that app out of the catalog
+     */
+    private long parseNumber(CharSequence digits) throws IOException {
+        long value = 0;
+        for (int i = 0; i < digits.length(); i++) {
+            char digit = digits.charAt(i);
+            if (digit < '0' || digit > '9')
+                throw new IOException("Invalid app id: " + digits);
+            value = value * 10 + (digit - '0');
+            if (value > Integer.MAX_VALUE)
+                return -1;
+        }
+        return value;
+    }
+
+    /**
+     * Reads a number, true, false or null into the text buffer.
+     */
+    private CharSequence readLiteral() throws IOException {
+        text.setLength(0);
+        while (true) {
+            if (position == limit && !fill())
+                return text;
+            char c = buffer[position];
+            if (c == ',' || c == '}' || c == ']' || Character.isWhitespace(c))
+                return text;
+            text.append(c);
+            position++;
+        }
+    }
+
+    /**
+     * Reads the rest of a string whose opening quote was consumed, unescaped into the text buffer.
+     */
+    private void readString() throws IOException {
+        text.setLength(0);
+        while (true) {
+            int c = next();
+            if (c == '"')
+                return;
+            if (c != '\\') {
+                text.append((char) c);
+                continue;
+            }
+
+            c = next();
+            switch (c) {
+                case 'b': text.append('\b'); break;
+                case 'f': text.append('\f'); break;
+                case 'n': text.append('\n'); break;
+                case 'r': text.append('\r'); break;
+                case 't': text.append('\t'); break;
+                case 'u':
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(next(), 16);
+                        if (digit < 0)
+                            throw new IOException("Invalid unicode escape in app list");
+                        code = (code << 4) | digit;
+                    }
+                    text.append((char) code);
+                    break;
+                default:
+                    text.append((char) c);
+            }
+        }
+    }
+
+    private boolean isText(String value) {
+        if (text.length() != value.length())
+            return false;
+        for (int i = 0; i < value.length(); i++) {
+            if (text.charAt(i) != value.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c;
+        do {
+            c = next();
+        } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+        return c;
+    }
+
+    private int next() throws IOException {
+        if (position == limit && !fill())
+            throw new IOException("Unexpected end of app list");
+        return buffer[position++];
+    }
+
+    private boolean fill() throws IOException {
+        int read = in.read(buffer, 0, buffer.length);
+        if (read <= 0)
+            return false;
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    private IOException syntaxError(int c) {
+        return new IOException("Unexpected '" + (char) c + "' in app list");
+    }
+}
@@ -0,0 +1,177 @@
+package steam;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Keeps the steam catalog up to date. The last snapshot is mapped on start, and a background thread then re-fetches
+ * the app list on a schedule. Fetches are conditional on the validators of the current snapshot, so an unchanged list
+ * costs a single 304 response. A changed list is parsed and indexed on the refresh thread and only then swapped in,
+ * readers always see either the old or the new catalog in full and never wait for a refresh.
+ */
+public class CatalogRefresher {
+
+    private static final long FIRST_RETRY_MILLIS = 5000;
+    private static final long MAX_RETRY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final URL url;
+    private final Path snapshotPath;
+    private final Function<AppCatalog, AppIndex> indexer;
+
+    private final AtomicReference<CatalogSnapshot> current = new AtomicReference<>();
+    private final CompletableFuture<CatalogSnapshot> firstCatalog = new CompletableFuture<>();
+    private final ScheduledExecutorService scheduler;
+
+    // Only touched by the refresh thread
+    private long retryMillis;
+    private boolean retryScheduled;
+
+    /**
+     * @param url address of the GetAppList api
+     * @param snapshotPath where the latest catalog is persisted between runs
+     * @param indexer builds the search index for a freshly fetched catalog
+     */
+    public CatalogRefresher(URL url, Path snapshotPath, Function<AppCatalog, AppIndex> indexer) {
+        this.url = url;
+        this.snapshotPath = snapshotPath;
+        this.indexer = indexer;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "steam-catalog-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Maps the snapshot of the last run, if any, and schedules the refreshes. The first refresh starts right away.
+     *
+     * @param interval time between the end of one refresh and the start of the next
+     * @param unit unit of the interval
+     */
+    public void start(long interval, TimeUnit unit) {
+
+        try {
+            CatalogSnapshot snapshot = CatalogSnapshot.load(snapshotPath);
+            if (snapshot != null) {
+                if (current.compareAndSet(null, snapshot))
+                    firstCatalog.complete(snapshot);
+                System.out.println("Loaded " + snapshot.getIndex().catalog().size() + " steam apps from " + snapshotPath);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        scheduler.scheduleWithFixedDelay(this::refreshQuietly, 0, interval, unit);
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * @return completes with the first catalog there is, the snapshot of the last run or else the first fetched one
+     */
+    public CompletableFuture<CatalogSnapshot> firstCatalog() {
+        return firstCatalog;
+    }
+
+    /**
+     * @return the latest catalog, or null if neither a snapshot nor a fetch has produced one yet
+     */
+    public CatalogSnapshot current() {
+        return current.get();
+    }
+
+    private void refreshQuietly() {
+        // An exception escaping a scheduled task would cancel every later refresh.
+        try {
+            refresh();
+        } catch (Exception e) {
+            e.printStackTrace();
+            if (!firstCatalog.isDone())
+                scheduleRetry();
+        }
+    }
+
+    /**
+     * Until there is a first catalog a failed fetch is tried again after a short delay, doubled on every failure,
+     * rather than only at the next scheduled refresh.
+     */
+    private void scheduleRetry() {
+        if (retryScheduled)
+            return;
+        retryMillis = retryMillis == 0 ? FIRST_RETRY_MILLIS : Math.min(MAX_RETRY_MILLIS, retryMillis * 2);
+        retryScheduled = true;
+        scheduler.schedule(() -> {
+            retryScheduled = false;
+            refreshQuietly();
+        }, retryMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Fetches the app list unless it is unchanged since the current catalog was fetched.
+     *
+     * @return true if a new catalog was swapped in
+     * @throws IOException if the app list could not be fetched or read
+     */
+    public boolean refresh() throws IOException {
+
+        CatalogSnapshot previous = current.get();
+
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("GET");
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        if (previous != null) {
+            if (previous.getEtag() != null)
+                connection.setRequestProperty("If-None-Match", previous.getEtag());
+            if (previous.getLastModified() > 0)
+                connection.setIfModifiedSince(previous.getLastModified());
+        }
+
+        if (connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            // Nothing to read, closing the empty body hands the connection back to the keep-alive pool.
+            connection.getInputStream().close();
+            return false;
+        }
+
+        // The body is read to the end and closed, which lets HttpURLConnection reuse the socket for the next request.
+        AppCatalog catalog;
+        try (InputStream body = connection.getInputStream()) {
+            InputStream decoded = "gzip".equalsIgnoreCase(connection.getContentEncoding())
+                    ? new GZIPInputStream(body, 64 * 1024)
+                    : body;
+            Reader in = new InputStreamReader(decoded, StandardCharsets.UTF_8);
+            catalog = AppListParser.parse(in);
+        }
+
+        CatalogSnapshot fetched = new CatalogSnapshot(indexer.apply(catalog),
+                connection.getHeaderField("ETag"), connection.getLastModified());
+
+        if (!current.compareAndSet(previous, fetched))
+            return false;
+        firstCatalog.complete(fetched);
+
+        System.out.println("Refreshed steam catalog, " + catalog.size() + " apps");
+
+        try {
+            fetched.write(snapshotPath);
+        } catch (IOException e) {
+            // The new catalog is already live, it just has to be fetched again after a restart.
+            e.printStackTrace();
+        }
+        return true;
+    }
+}
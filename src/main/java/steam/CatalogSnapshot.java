@@ -0,0 +1,189 @@
+package steam;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A catalog with its search index and the HTTP validators of the response it was read from. Snapshots are immutable
+ * and can be stored in a binary file, loading maps the file into memory and hands out views of the mapped columns,
+ * so nothing is parsed or copied and the index is searchable right away.
+ *
+ * Layout, big endian: magic, version, the five column lengths, last modified time and etag length, then the int
+ * columns app ids, name offsets, searchable entries, index keys, posting starts and postings, the names as chars and
+ * finally the etag as UTF-8.
+ */
+public class CatalogSnapshot {
+
+    private static final int MAGIC = 0x53544150; // "STAP"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 7 * 4 + 8 + 4;
+
+    private final AppIndex index;
+    private final String etag;
+    private final long lastModified;
+
+    /**
+     * @param index the searchable catalog
+     * @param etag ETag header of the app list response, null if there was none
+     * @param lastModified Last-Modified header of the app list response in epoch millis, 0 if there was none
+     */
+    public CatalogSnapshot(AppIndex index, String etag, long lastModified) {
+        this.index = index;
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    public AppIndex getIndex() {
+        return index;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Writes the snapshot to a temporary file first and moves it in place, so a crash half way never leaves a broken
+     * snapshot behind and processes that mapped the old file keep working.
+     *
+     * @param path destination of the snapshot
+     * @throws IOException if the snapshot could not be written
+     */
+    public void write(Path path) throws IOException {
+
+        AppCatalog catalog = index.catalog();
+        byte[] etagBytes = etag != null ? etag.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        IntBuffer[] columns = {
+                catalog.appIds(), catalog.nameOffsets(),
+                index.entries(), index.keys(), index.postingStarts(), index.postings()
+        };
+        CharBuffer names = catalog.names();
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION)
+                    .putInt(catalog.size()).putInt(names.limit())
+                    .putInt(index.size()).putInt(index.keys().limit()).putInt(index.postings().limit())
+                    .putLong(lastModified).putInt(etagBytes.length);
+            header.flip();
+            writeFully(channel, header);
+
+            ByteBuffer chunk = ByteBuffer.allocate(64 * 1024);
+            for (IntBuffer column : columns) {
+                while (column.hasRemaining()) {
+                    chunk.clear();
+                    IntBuffer ints = chunk.asIntBuffer();
+                    int count = Math.min(ints.remaining(), column.remaining());
+                    for (int i = 0; i < count; i++) {
+                        ints.put(column.get());
+                    }
+                    chunk.limit(count * 4);
+                    writeFully(channel, chunk);
+                }
+            }
+            while (names.hasRemaining()) {
+                chunk.clear();
+                CharBuffer chars = chunk.asCharBuffer();
+                int count = Math.min(chars.remaining(), names.remaining());
+                for (int i = 0; i < count; i++) {
+                    chars.put(names.get());
+                }
+                chunk.limit(count * 2);
+                writeFully(channel, chunk);
+            }
+            writeFully(channel, ByteBuffer.wrap(etagBytes));
+
+            channel.force(false);
+        }
+
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Maps a snapshot written by {@link #write(Path)}.
+     *
+     * @param path the snapshot file
+     * @return the mapped snapshot, or null if there is no snapshot or it was written by another version
+     * @throws IOException if the snapshot exists but could not be read
+     */
+    public static CatalogSnapshot load(Path path) throws IOException {
+
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE)
+                return null;
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        if (mapped.getInt() != MAGIC || mapped.getInt() != VERSION)
+            return null;
+
+        int appCount = mapped.getInt();
+        int nameChars = mapped.getInt();
+        int entryCount = mapped.getInt();
+        int keyCount = mapped.getInt();
+        int postingCount = mapped.getInt();
+        long lastModified = mapped.getLong();
+        int etagLength = mapped.getInt();
+
+        long expected = HEADER_BYTES
+                + 4L * (appCount + appCount + 1 + entryCount + keyCount + keyCount + 1 + postingCount)
+                + 2L * nameChars + etagLength;
+        if (appCount < 0 || nameChars < 0 || entryCount < 0 || keyCount < 0 || postingCount < 0 || etagLength < 0
+                || expected != mapped.capacity())
+            return null;
+
+        IntBuffer appIds = intColumn(mapped, appCount);
+        IntBuffer nameOffsets = intColumn(mapped, appCount + 1);
+        IntBuffer entries = intColumn(mapped, entryCount);
+        IntBuffer keys = intColumn(mapped, keyCount);
+        IntBuffer postingStarts = intColumn(mapped, keyCount + 1);
+        IntBuffer postings = intColumn(mapped, postingCount);
+
+        ByteBuffer nameBytes = mapped.slice();
+        nameBytes.limit(nameChars * 2);
+        CharBuffer names = nameBytes.asCharBuffer();
+        mapped.position(mapped.position() + nameChars * 2);
+
+        String etag = null;
+        if (etagLength > 0) {
+            byte[] etagBytes = new byte[etagLength];
+            mapped.get(etagBytes);
+            etag = new String(etagBytes, StandardCharsets.UTF_8);
+        }
+
+        AppCatalog catalog = new AppCatalog(appIds, nameOffsets, names);
+        return new CatalogSnapshot(new AppIndex(catalog, entries, keys, postingStarts, postings), etag, lastModified);
+    }
+
+    private static IntBuffer intColumn(ByteBuffer mapped, int length) {
+        ByteBuffer bytes = mapped.slice();
+        bytes.limit(length * 4);
+        mapped.position(mapped.position() + length * 4);
+        return bytes.asIntBuffer();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
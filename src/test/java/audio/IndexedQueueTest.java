@@ -0,0 +1,112 @@
+package audio;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class IndexedQueueTest {
+
+    @Test
+    public void behavesLikeList() {
+        Random random = new Random(7);
+        IndexedQueue<Integer> queue = new IndexedQueue<>();
+        List<Integer> model = new ArrayList<>();
+
+        for (int step = 0; step < 200_000; step++) {
+            int operation = random.nextInt(9);
+            int value = random.nextInt();
+            switch (operation) {
+                case 0:
+                case 1:
+                    queue.addLast(value);
+                    model.add(value);
+                    break;
+                case 2:
+                    List<Integer> added = Arrays.asList(value, value + 1, value + 2);
+                    queue.addAll(added);
+                    model.addAll(added);
+                    break;
+                case 3:
+                    assertEquals(model.isEmpty() ? null : model.remove(0), queue.pollFirst());
+                    break;
+                case 4:
+                    if (!model.isEmpty()) {
+                        int index = random.nextInt(model.size());
+                        assertEquals(model.remove(index), queue.removeAt(index));
+                    }
+                    break;
+                case 5:
+                    if (!model.isEmpty()) {
+                        int from = random.nextInt(model.size());
+                        int to = random.nextInt(model.size());
+                        queue.move(from, to);
+                        model.add(to, model.remove(from));
+                    }
+                    break;
+                case 6:
+                    if (!model.isEmpty()) {
+                        int index = random.nextInt(model.size());
+                        queue.set(index, value);
+                        model.set(index, value);
+                    }
+                    break;
+                case 7:
+                    if (random.nextInt(100) == 0) {
+                        long seed = random.nextLong();
+                        queue.shuffle(new Random(seed));
+                        Collections.shuffle(model, new Random(seed));
+                    }
+                    break;
+                default:
+                    // Drain now and then so the head wraps around the array at every size
+                    if (random.nextInt(1000) == 0) {
+                        while (!model.isEmpty()) {
+                            assertEquals(model.remove(0), queue.pollFirst());
+                        }
+                    }
+            }
+            assertEquals(model.size(), queue.size());
+            assertEquals(model.isEmpty() ? null : model.get(0), queue.peekFirst());
+            if (!model.isEmpty()) {
+                int index = random.nextInt(model.size());
+                assertEquals(model.get(index), queue.get(index));
+            }
+        }
+
+        List<Integer> iterated = new ArrayList<>();
+        for (Integer element : queue) {
+            iterated.add(element);
+        }
+        assertEquals(model, iterated);
+    }
+
+    @Test
+    public void emptyQueueHasNoHead() {
+        IndexedQueue<String> queue = new IndexedQueue<>();
+        assertTrue(queue.isEmpty());
+        assertNull(queue.peekFirst());
+        assertNull(queue.pollFirst());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsIndexPastEnd() {
+        IndexedQueue<String> queue = new IndexedQueue<>();
+        queue.addLast("a");
+        queue.get(1);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsMoveOutsideQueue() {
+        IndexedQueue<String> queue = new IndexedQueue<>();
+        queue.addLast("a");
+        queue.move(0, -1);
+    }
+}
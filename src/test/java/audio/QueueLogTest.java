@@ -0,0 +1,258 @@
+package audio;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class QueueLogTest {
+
+    private Path directory;
+    private Path path;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("queue-log");
+        path = directory.resolve("1.queue");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void replaysEveryRecordType() throws IOException {
+        QueueLog log = QueueLog.open(path);
+        log.addAll(new byte[][]{track("a"), track("b"), track("c")});
+        log.add(track("d"));
+        log.start(track("x"));
+        log.position(1500);
+        log.next();
+        log.position(700);
+        log.remove(1);
+        log.add(track("e"));
+        log.move(2, 0);
+        log.close();
+
+        assertState(QueueLog.read(path), "a", 700, "e", "b", "d");
+    }
+
+    @Test
+    public void replaysShuffleWithItsSeed() throws IOException {
+        QueueLog log = QueueLog.open(path);
+        for (int i = 0; i < 50; i++) {
+            log.add(track("t" + i));
+        }
+        log.shuffle(42);
+        QueueStore.QueueState written = log.state();
+        log.close();
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            expected.add("t" + i);
+        }
+        // The queue shuffles like Collections.shuffle, swapping from the back
+        Collections.shuffle(expected, new Random(42));
+
+        assertEquals(expected, titles(written.getQueued()));
+        assertEquals(expected, titles(QueueLog.read(path).getQueued()));
+    }
+
+    @Test
+    public void dropsRecordCutOffByCrash() throws IOException {
+        QueueLog log = QueueLog.open(path);
+        log.add(track("a"));
+        log.add(track("b"));
+        log.close();
+        long complete = Files.size(path);
+
+        byte[] torn = record((byte) 1, track("cut"));
+        for (int cut = 1; cut < torn.length; cut++) {
+            Files.write(path, Arrays.copyOf(torn, cut), StandardOpenOption.APPEND);
+
+            log = QueueLog.open(path);
+            assertEquals("cut after " + cut + " bytes", complete, Files.size(path));
+            assertState(log.state(), null, 0, "a", "b");
+            log.close();
+        }
+
+        log = QueueLog.open(path);
+        log.add(track("c"));
+        log.close();
+        assertState(QueueLog.read(path), null, 0, "a", "b", "c");
+    }
+
+    @Test
+    public void stopsAtRemoveOutsideQueue() throws IOException {
+        writeTwoTracksThen(ByteBuffer.allocate(5).put((byte) 5).putInt(2).array());
+        assertState(QueueLog.read(path), null, 0, "a", "b");
+    }
+
+    @Test
+    public void stopsAtMoveOutsideQueue() throws IOException {
+        writeTwoTracksThen(ByteBuffer.allocate(9).put((byte) 6).putInt(0).putInt(7).array());
+        assertState(QueueLog.read(path), null, 0, "a", "b");
+    }
+
+    @Test
+    public void stopsAtUnknownRecord() throws IOException {
+        writeTwoTracksThen(new byte[]{42});
+        assertState(QueueLog.read(path), null, 0, "a", "b");
+    }
+
+    @Test
+    public void openTruncatesEverythingAfterBadRecord() throws IOException {
+        long complete = writeTwoTracksThen(ByteBuffer.allocate(5).put((byte) 5).putInt(-1).array());
+
+        QueueLog log = QueueLog.open(path);
+        assertEquals(complete, Files.size(path));
+        log.add(track("c"));
+        log.close();
+        assertState(QueueLog.read(path), null, 0, "a", "b", "c");
+    }
+
+    @Test
+    public void rejectsChangesOutsideQueue() throws IOException {
+        QueueLog log = QueueLog.open(path);
+        log.add(track("a"));
+        long size = Files.size(path);
+        try {
+            log.remove(1);
+            fail("removed a track that is not queued");
+        } catch (IOException expected) {
+            // Nothing written
+        }
+        try {
+            log.move(0, 1);
+            fail("moved to a place outside the queue");
+        } catch (IOException expected) {
+            // Nothing written
+        }
+        log.close();
+        assertEquals(size, Files.size(path));
+        assertState(QueueLog.read(path), null, 0, "a");
+    }
+
+    @Test
+    public void missingLogIsEmpty() throws IOException {
+        assertTrue(QueueLog.read(path).isEmpty());
+        assertFalse(Files.exists(path));
+    }
+
+    @Test
+    public void compactionKeepsState() throws IOException {
+        QueueLog log = QueueLog.open(path);
+        for (int i = 0; i < 40; i++) {
+            log.add(track("t" + i));
+            log.next();
+            log.position(i * 100L + 1);
+        }
+        log.add(track("waiting"));
+        assertTrue(log.needsCompaction());
+        long before = Files.size(path);
+
+        log.compact();
+        assertFalse(log.needsCompaction());
+        assertTrue(Files.size(path) < before);
+        assertFalse(Files.exists(temporary()));
+
+        // Appending goes on after compaction
+        log.add(track("last"));
+        log.close();
+        assertState(QueueLog.read(path), "t39", 3901, "waiting", "last");
+    }
+
+    @Test
+    public void leftoverTemporaryFileIsIgnoredAndReplaced() throws IOException {
+        QueueLog log = QueueLog.open(path);
+        log.add(track("a"));
+        log.close();
+        // A crash while compacting leaves the old log in place next to a partly written temporary file
+        Files.write(temporary(), new byte[]{1, 0, 0});
+
+        log = QueueLog.open(path);
+        assertState(log.state(), null, 0, "a");
+        log.compact();
+        assertFalse(Files.exists(temporary()));
+        assertState(QueueLog.read(path), null, 0, "a");
+    }
+
+    @Test
+    public void compactionRemovesEmptyLog() throws IOException {
+        QueueLog log = QueueLog.open(path);
+        log.add(track("a"));
+        log.next();
+        log.next();
+        log.compact();
+        assertFalse(Files.exists(path));
+        assertTrue(QueueLog.read(path).isEmpty());
+    }
+
+    /**
+     * Writes the tracks a and b, then the given bytes and a valid track c, which replay must not reach.
+     *
+     * @return the length of the log before the given bytes
+     */
+    private long writeTwoTracksThen(byte[] bad) throws IOException {
+        QueueLog log = QueueLog.open(path);
+        log.add(track("a"));
+        log.add(track("b"));
+        log.close();
+        long complete = Files.size(path);
+        Files.write(path, bad, StandardOpenOption.APPEND);
+        Files.write(path, record((byte) 1, track("c")), StandardOpenOption.APPEND);
+        return complete;
+    }
+
+    private Path temporary() {
+        return path.resolveSibling(path.getFileName() + ".tmp");
+    }
+
+    private static void assertState(QueueStore.QueueState state, String current, long position, String... queued) {
+        if (current == null)
+            assertNull(state.getCurrent());
+        else
+            assertArrayEquals(track(current), state.getCurrent());
+        assertEquals(position, state.getPosition());
+        assertEquals(Arrays.asList(queued), titles(state.getQueued()));
+    }
+
+    private static List<String> titles(List<byte[]> tracks) {
+        List<String> titles = new ArrayList<>();
+        for (byte[] track : tracks) {
+            titles.add(new String(track, StandardCharsets.UTF_8));
+        }
+        return titles;
+    }
+
+    private static byte[] record(byte type, byte[] track) {
+        return ByteBuffer.allocate(5 + track.length).put(type).putInt(track.length).put(track).array();
+    }
+
+    private static byte[] track(String title) {
+        return title.getBytes(StandardCharsets.UTF_8);
+    }
+}
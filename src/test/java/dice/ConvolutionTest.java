@@ -0,0 +1,91 @@
+package dice;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConvolutionTest {
+
+    @Test
+    public void transformMatchesDirectProduct() {
+        double[] a = vector(300, 1);
+        double[] b = vector(200, 2);
+        assertClose(direct(a, b), Convolution.convolve(a, b));
+        assertClose(direct(a, a), Convolution.convolve(a, a));
+    }
+
+    @Test
+    public void uniformSumMatchesRepeatedProducts() {
+        for (int count : new int[] {1, 2, 7, 50}) {
+            double[] die = new double[6];
+            Arrays.fill(die, 1.0 / 6);
+            double[] expected = {1};
+            for (int i = 0; i < count; i++) {
+                expected = direct(expected, die);
+            }
+            assertClose(expected, Convolution.uniformSum(count, 6));
+            assertClose(expected, Convolution.power(die, count));
+        }
+    }
+
+    @Test
+    public void uniformSumTailsAreExact() {
+        double[] sum = Convolution.uniformSum(100, 6);
+        // One way each to roll all ones or all sixes
+        assertEquals(Math.pow(6, -100), sum[0], Math.pow(6, -100) * 1e-9);
+        assertEquals(sum[0], sum[sum.length - 1], 0);
+        assertEquals(100 * Math.pow(6, -100), sum[sum.length - 2], Math.pow(6, -100) * 1e-7);
+    }
+
+    @Test
+    public void transformDropsRoundingNoise() {
+        double[] die = new double[100];
+        Arrays.fill(die, 0.01);
+        double[] sum = Convolution.power(die, 999);
+        assertEquals(999 * 99 + 1, sum.length);
+        double largest = 0;
+        for (double probability : sum) {
+            assertTrue(probability >= 0);
+            largest = Math.max(largest, probability);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, sum[i], 0);
+            assertEquals(0, sum[sum.length - 1 - i], 0);
+        }
+        for (double probability : sum) {
+            assertTrue(probability == 0 || probability >= largest * Convolution.NOISE);
+        }
+    }
+
+    private static double[] vector(int length, int seed) {
+        double[] vector = new double[length];
+        for (int i = 0; i < length; i++) {
+            vector[i] = (i * 7919 + seed * 104729) % 1000 / 1000.0 + 0.001;
+        }
+        return vector;
+    }
+
+    private static double[] direct(double[] a, double[] b) {
+        double[] result = new double[a.length + b.length - 1];
+        for (int i = 0; i < a.length; i++) {
+            for (int j = 0; j < b.length; j++) {
+                result[i + j] += a[i] * b[j];
+            }
+        }
+        return result;
+    }
+
+    private static void assertClose(double[] expected, double[] actual) {
+        assertEquals(expected.length, actual.length);
+        double largest = 0;
+        for (double value : expected) {
+            largest = Math.max(largest, value);
+        }
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("index " + i, expected[i], actual[i], largest * 1e-12);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package dice;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DiceExpressionTest {
+
+    @Test
+    public void parsesSingleTerm() {
+        DiceExpression expression = DiceExpression.parse("2d6");
+        assertEquals(1, expression.getTermCount());
+        assertEquals(2, expression.getCount(0));
+        assertEquals(6, expression.getSides(0));
+        assertEquals(DiceExpression.KEEP_ALL, expression.getKeepMode(0));
+        assertFalse(expression.isExploding(0));
+        assertFalse(expression.isSuccessCount());
+        assertEquals(0, expression.getModifier());
+    }
+
+    @Test
+    public void countDefaultsToOne() {
+        DiceExpression expression = DiceExpression.parse("d20");
+        assertEquals(1, expression.getCount(0));
+        assertEquals(20, expression.getSides(0));
+    }
+
+    @Test
+    public void foldsConstantsIntoModifier() {
+        DiceExpression expression = DiceExpression.parse(" 4 + 1d8 - 3 - 2D4 + 10 ");
+        assertEquals(2, expression.getTermCount());
+        assertEquals(11, expression.getModifier());
+        assertFalse(expression.isNegative(0));
+        assertTrue(expression.isNegative(1));
+        assertEquals(3, expression.getDiceCount());
+    }
+
+    @Test
+    public void parsesKeepAndDrop() {
+        assertKeep("4d6kh3", DiceExpression.KEEP_HIGHEST, 3);
+        assertKeep("4d6k3", DiceExpression.KEEP_HIGHEST, 3);
+        assertKeep("2d20kl1", DiceExpression.KEEP_LOWEST, 1);
+        assertKeep("4d6dh1", DiceExpression.DROP_HIGHEST, 1);
+        assertKeep("4d6dl1", DiceExpression.DROP_LOWEST, 1);
+        assertKeep("4d6d1", DiceExpression.DROP_LOWEST, 1);
+        assertKeep("4D6KH3", DiceExpression.KEEP_HIGHEST, 3);
+    }
+
+    @Test
+    public void dropOnlyFollowsDiceWhenItHasACount() {
+        assertKeep("2d6dl1", DiceExpression.DROP_LOWEST, 1);
+        assertError("2d6d", "unexpected 'd' at position 4");
+        assertError("2d6dl", "expected number of dice to drop at position 6");
+    }
+
+    @Test
+    public void parsesExplodingDiceAndModifiersInAnyOrder() {
+        DiceExpression expression = DiceExpression.parse("5d10!kh3");
+        assertTrue(expression.isExploding(0));
+        assertEquals(DiceExpression.KEEP_HIGHEST, expression.getKeepMode(0));
+
+        expression = DiceExpression.parse("5d10 kh3 !");
+        assertTrue(expression.isExploding(0));
+        assertEquals(3, expression.getKeepCount(0));
+    }
+
+    @Test
+    public void parsesSuccessTarget() {
+        DiceExpression expression = DiceExpression.parse("10d10 # 7");
+        assertTrue(expression.isSuccessCount());
+        assertEquals(7, expression.getTarget());
+
+        assertEquals(2, DiceExpression.parse("3d6!+2d8#5").getTermCount());
+    }
+
+    @Test
+    public void acceptsLimits() {
+        assertEquals(DiceExpression.MAX_DICE, DiceExpression.parse("999d6").getDiceCount());
+        assertEquals(DiceExpression.MAX_DICE, DiceExpression.parse("500d6+499d4").getDiceCount());
+        assertEquals(DiceExpression.MAX_TERMS, DiceExpression.parse(terms(DiceExpression.MAX_TERMS)).getTermCount());
+    }
+
+    @Test
+    public void reportsEveryError() {
+        assertError("", "expected dice like 2d6 at position 1");
+        assertError("x", "expected dice like 2d6 at position 1");
+        assertError("+2d6", "expected dice like 2d6 at position 1");
+        assertError("2d6 +", "expected dice like 2d6 at position 6");
+        assertError("2d6x", "unexpected 'x' at position 4");
+        assertError("5", "there are no dice to roll at position 2");
+        assertError("0d6", "at least one die must be rolled at position 3");
+        assertError("2d0", "dice need at least one side at position 4");
+        assertError("2d", "expected number of sides at position 3");
+        assertError("4d6kh", "expected number of dice to keep at position 6");
+        assertError("3d6!!", "dice can only explode once at position 6");
+        assertError("3d1!", "one sided dice can not explode at position 5");
+        assertError("4d6kh3dl1", "only one keep or drop is allowed per dice term at position 7");
+        assertError("2d6#", "expected success target at position 5");
+        assertError("2d6#0", "the success target must be at least 1 at position 6");
+        assertError("2d6+1#4", "modifiers can not be combined with a success target at position 8");
+        assertError("2d6-1d4#3", "subtracted dice can not be combined with a success target at position 10");
+        assertError("99999999999d6", "number is too large at position 10");
+        assertError("2d99999999999", "number of sides is too large at position 12");
+    }
+
+    @Test
+    public void reportsLimits() {
+        assertError("1000d6", "at most 999 dice can be rolled at once at position 6");
+        assertError("500d6+500d6", "at most 999 dice can be rolled at once at position 11");
+        assertError(terms(DiceExpression.MAX_TERMS + 1), "at most 20 dice terms are allowed at position 83");
+    }
+
+    private static String terms(int count) {
+        StringBuilder text = new StringBuilder("1d2");
+        for (int i = 1; i < count; i++) {
+            text.append("+1d2");
+        }
+        return text.toString();
+    }
+
+    private static void assertKeep(String text, int mode, int count) {
+        DiceExpression expression = DiceExpression.parse(text);
+        assertEquals(text, mode, expression.getKeepMode(0));
+        assertEquals(text, count, expression.getKeepCount(0));
+    }
+
+    private static void assertError(String text, String message) {
+        try {
+            DiceExpression.parse(text);
+            fail("parsed " + text);
+        } catch (DiceFormatException e) {
+            assertEquals(text, message, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package dice;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DiceOddsTest {
+
+    // Explosion chains are enumerated until they are less likely than this
+    private static final double CHAIN_TAIL = 1e-15;
+    // The odds cut explosion chains off a little earlier, which moves single probabilities by less than this
+    private static final double TOLERANCE = 100 * DiceOdds.EXPLOSION_TAIL;
+
+    private final DiceOdds odds = new DiceOdds(16, 16);
+
+    @Test
+    public void sumsMatchEnumeration() {
+        assertMatches("1d20");
+        assertMatches("3d6");
+        assertMatches("2d20-1d4+2");
+        assertMatches("1d6-1d6");
+    }
+
+    @Test
+    public void keptDiceMatchEnumeration() {
+        assertMatches("4d6kh3");
+        assertMatches("4d6dl1");
+        assertMatches("5d4kl2");
+        assertMatches("3d8dh1");
+        assertMatches("2d20kh1+2d20kl1");
+        assertMatches("3d6dh3+1");
+    }
+
+    @Test
+    public void explodingDiceMatchEnumeration() {
+        assertMatches("1d6!");
+        assertMatches("3d6!");
+        assertMatches("2d4!+1d6-2");
+        assertMatches("2d2!");
+    }
+
+    @Test
+    public void successesMatchEnumeration() {
+        assertMatches("4d6#5");
+        assertMatches("5d6kh3#4");
+        assertMatches("5d6kl2#4");
+        assertMatches("3d6!#5");
+        assertMatches("2d4!#4");
+        assertMatches("3d4!#5");
+        assertMatches("2d6+1d8#5");
+    }
+
+    @Test
+    public void sharesDistributionAcrossModifiers() {
+        Distribution plain = odds.distribution(DiceExpression.parse("10d6"));
+        Distribution shifted = odds.distribution(DiceExpression.parse("10d6+3"));
+        assertEquals(plain.getMinimum() + 3, shifted.getMinimum());
+        assertEquals(plain.getMean() + 3, shifted.getMean(), 1e-9);
+        assertEquals(plain.probability(35), shifted.probability(38), 0);
+    }
+
+    @Test
+    public void largeSumsHaveNoRoundingNoiseInTheTails() {
+        Distribution distribution = odds.distribution(DiceExpression.parse("999d100"));
+        // The true probabilities are far below the smallest double
+        assertEquals(0, distribution.probabilityAtMost(distribution.getMinimum() + 5), 0);
+        assertEquals(0, distribution.probabilityAtLeast(distribution.getMaximum() - 5), 0);
+        assertEquals(999 * 50.5, distribution.getMean(), 1e-6);
+        assertEquals(Math.sqrt(999 * (100 * 100 - 1) / 12.0), distribution.getStandardDeviation(), 1e-6);
+        assertEquals(1, distribution.probabilityAtMost(distribution.getMaximum() - 1), 1e-9);
+    }
+
+    @Test
+    public void quantilesFollowTheDistribution() {
+        Distribution distribution = odds.distribution(DiceExpression.parse("2d6"));
+        assertEquals(7, distribution.getMostLikely());
+        assertEquals(7, distribution.quantile(0.5));
+        assertEquals(2, distribution.quantile(1.0 / 36));
+        assertEquals(12, distribution.quantile(1));
+        assertEquals(6.0 / 36, distribution.probability(7), 1e-12);
+        assertEquals(0, distribution.probability(13), 0);
+        assertEquals(1, distribution.probabilityAtLeast(2), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsKeptExplodingDice() {
+        odds.distribution(DiceExpression.parse("4d6!kh3"));
+    }
+
+    private void assertMatches(String text) {
+        DiceExpression expression = DiceExpression.parse(text);
+        Distribution distribution = odds.distribution(expression);
+        Map<Long, Double> expected = enumerate(expression);
+
+        double mean = 0;
+        for (Map.Entry<Long, Double> outcome : expected.entrySet()) {
+            assertEquals(text + " = " + outcome.getKey(), outcome.getValue(),
+                    distribution.probability(outcome.getKey()), TOLERANCE);
+            mean += outcome.getKey() * outcome.getValue();
+        }
+        for (long value = distribution.getMinimum(); value <= distribution.getMaximum(); value++) {
+            if (!expected.containsKey(value))
+                assertTrue(text + " = " + value, distribution.probability(value) < TOLERANCE);
+        }
+        assertEquals(text, mean, distribution.getMean(), 1e-9);
+    }
+
+    /**
+     * Outcomes of the expression from every combination of faces, or of explosion chains for exploding dice.
+     */
+    private static Map<Long, Double> enumerate(DiceExpression expression) {
+        Map<Long, Double> total = new HashMap<>();
+        total.put(expression.isSuccessCount() ? 0 : expression.getModifier(), 1.0);
+        for (int term = 0; term < expression.getTermCount(); term++) {
+            Map<Long, Double> dice = expression.isExploding(term) ? explodingTerm(expression, term)
+                    : keptTerm(expression, term);
+            total = add(total, dice, expression.isNegative(term));
+        }
+        return total;
+    }
+
+    private static Map<Long, Double> keptTerm(DiceExpression expression, int term) {
+        int count = expression.getCount(term);
+        int sides = expression.getSides(term);
+        int mode = expression.getKeepMode(term);
+        int kept;
+        if (mode == DiceExpression.KEEP_HIGHEST || mode == DiceExpression.KEEP_LOWEST)
+            kept = Math.min(count, expression.getKeepCount(term));
+        else if (mode == DiceExpression.KEEP_ALL)
+            kept = count;
+        else
+            kept = Math.max(0, count - expression.getKeepCount(term));
+        boolean highest = mode != DiceExpression.KEEP_LOWEST && mode != DiceExpression.DROP_HIGHEST;
+
+        Map<Long, Double> outcomes = new HashMap<>();
+        double chance = Math.pow(sides, -count);
+        int[] faces = new int[count];
+        Arrays.fill(faces, 1);
+        while (true) {
+            int[] sorted = faces.clone();
+            Arrays.sort(sorted);
+            long value = 0;
+            for (int i = 0; i < kept; i++) {
+                int face = highest ? sorted[count - 1 - i] : sorted[i];
+                value += expression.isSuccessCount() ? (face >= expression.getTarget() ? 1 : 0) : face;
+            }
+            outcomes.merge(value, chance, Double::sum);
+
+            int die = 0;
+            while (die < count && faces[die] == sides) {
+                faces[die++] = 1;
+            }
+            if (die == count)
+                return outcomes;
+            faces[die]++;
+        }
+    }
+
+    private static Map<Long, Double> explodingTerm(DiceExpression expression, int term) {
+        int sides = expression.getSides(term);
+        Map<Long, Double> die = new HashMap<>();
+        double chance = 1.0 / sides;
+        for (int explosions = 0; chance > CHAIN_TAIL; explosions++) {
+            for (int face = 1; face < sides; face++) {
+                long value;
+                if (expression.isSuccessCount()) {
+                    int target = expression.getTarget();
+                    value = (sides >= target ? explosions : 0) + (face >= target ? 1 : 0);
+                } else {
+                    value = (long) explosions * sides + face;
+                }
+                die.merge(value, chance, Double::sum);
+            }
+            chance /= sides;
+        }
+
+        Map<Long, Double> outcomes = new HashMap<>();
+        outcomes.put(0L, 1.0);
+        for (int i = 0; i < expression.getCount(term); i++) {
+            outcomes = add(outcomes, die, false);
+        }
+        return outcomes;
+    }
+
+    private static Map<Long, Double> add(Map<Long, Double> a, Map<Long, Double> b, boolean subtract) {
+        Map<Long, Double> sum = new HashMap<>();
+        for (Map.Entry<Long, Double> x : a.entrySet()) {
+            for (Map.Entry<Long, Double> y : b.entrySet()) {
+                long value = subtract ? x.getKey() - y.getKey() : x.getKey() + y.getKey();
+                sum.merge(value, x.getValue() * y.getValue(), Double::sum);
+            }
+        }
+        return sum;
+    }
+}
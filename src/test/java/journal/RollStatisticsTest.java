@@ -0,0 +1,205 @@
+package journal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RollStatisticsTest {
+
+    private Path directory;
+    private RollJournal journal;
+    private RollStatistics statistics;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("rolls");
+        journal = new RollJournal(directory.toString(), 1024, 60_000);
+        statistics = new RollStatistics(journal);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        journal.destroy();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void countsOneByteFaces() throws IOException {
+        int[] faces = faces(6, 10_000, 1);
+        write(6, faces);
+        assertMatches(6, faces, statistics.get(6));
+    }
+
+    @Test
+    public void countsTwoByteFaces() throws IOException {
+        int[] faces = faces(1000, 20_000, 2);
+        write(1000, faces);
+        assertMatches(1000, faces, statistics.get(1000));
+    }
+
+    @Test
+    public void countsFourByteFacesWithoutChiSquare() throws IOException {
+        int[] faces = faces(100_000, 5_000, 3);
+        write(100_000, faces);
+        DieStatistics die = statistics.get(100_000);
+        assertMatches(100_000, faces, die);
+        assertFalse(die.hasFaceCounts());
+        assertTrue(Double.isNaN(die.getPValue()));
+    }
+
+    @Test
+    public void followsWritesAfterLoading() throws IOException {
+        for (int sides : new int[] {20, 300, 70_000}) {
+            int[] first = faces(sides, 3_000, sides);
+            int[] second = faces(sides, 2_000, sides + 1);
+            write(sides, first);
+            statistics.get(sides);
+
+            append(sides, second, true);
+            assertMatches(sides, concat(first, second), statistics.get(sides));
+        }
+    }
+
+    @Test
+    public void mapsTheFileAgainAfterAMissedWrite() throws IOException {
+        for (int sides : new int[] {6, 500, 80_000}) {
+            int[] first = faces(sides, 1_000, sides);
+            int[] missed = faces(sides, 500, sides + 1);
+            int[] seen = faces(sides, 700, sides + 2);
+            write(sides, first);
+            statistics.get(sides);
+
+            append(sides, missed, false);
+            append(sides, seen, true);
+            assertMatches(sides, concat(concat(first, missed), seen), statistics.get(sides));
+        }
+    }
+
+    @Test
+    public void ignoresPartlyWrittenRoll() throws IOException {
+        int[] faces = faces(300, 100, 4);
+        write(300, faces);
+        Files.write(JournalFile.path(directory, 300), new byte[] {1}, StandardOpenOption.APPEND);
+        assertMatches(300, faces, statistics.get(300));
+    }
+
+    @Test
+    public void foreignFileCountsAsEmpty() throws IOException {
+        write(8, faces(8, 100, 5));
+        DieStatistics die = statistics.get(10);
+        assertEquals(0, die.getRolls());
+
+        Files.move(JournalFile.path(directory, 8), JournalFile.path(directory, 10));
+        die = statistics.get(10);
+        assertEquals(0, die.getRolls());
+    }
+
+    @Test
+    public void countsRollsThroughTheJournal() throws Exception {
+        int[] faces = faces(12, 500, 6);
+        journal.record(12, faces, 0, faces.length);
+        journal.record(12, 11);
+        journal.destroy();
+        assertMatches(12, concat(faces, new int[] {11}), statistics.get(12));
+    }
+
+    @Test
+    public void pValueFollowsChiSquareDistribution() {
+        // Critical values of the 5% and 1% levels
+        assertEquals(0.05, DieStatistics.chiSquareUpperTail(11.070, 5), 0.002);
+        assertEquals(0.05, DieStatistics.chiSquareUpperTail(30.144, 19), 0.001);
+        assertEquals(0.01, DieStatistics.chiSquareUpperTail(36.191, 19), 0.001);
+        assertEquals(0.05, DieStatistics.chiSquareUpperTail(124.342, 100), 0.001);
+        assertEquals(1, DieStatistics.chiSquareUpperTail(0, 0), 0);
+        assertEquals(1, DieStatistics.erfc(0), 1e-7);
+        assertEquals(0.157299207, DieStatistics.erfc(1), 1e-7);
+        assertEquals(1.842700793, DieStatistics.erfc(-1), 1e-7);
+    }
+
+    private void assertMatches(int sides, int[] faces, DieStatistics die) {
+        long[] counts = new long[sides];
+        long sum = 0;
+        for (int face : faces) {
+            counts[face]++;
+            sum += face;
+        }
+        double expected = (double) faces.length / sides;
+        double chiSquare = 0;
+        for (long count : counts) {
+            chiSquare += (count - expected) * (count - expected) / expected;
+        }
+
+        assertEquals(sides, die.getSides());
+        assertEquals(faces.length, die.getRolls());
+        assertEquals((double) sum / faces.length + 1, die.getMean(), 1e-9);
+        if (sides <= RollStatistics.MAX_COUNTED_SIDES) {
+            assertEquals(chiSquare, die.getChiSquare(), chiSquare * 1e-9);
+            assertEquals(DieStatistics.chiSquareUpperTail(chiSquare, sides - 1), die.getPValue(), 1e-9);
+        }
+        if (sides <= RollStatistics.LISTED_FACES) {
+            for (int face = 1; face <= sides; face++) {
+                assertEquals(counts[face - 1], die.getFaceCount(face));
+            }
+        } else {
+            assertFalse(die.hasFaceCountList());
+        }
+    }
+
+    private void write(int sides, int[] faces) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(JournalFile.HEADER_BYTES);
+        JournalFile.writeHeader(buffer, sides);
+        Files.write(JournalFile.path(directory, sides), buffer.array());
+        append(sides, faces, false);
+    }
+
+    /**
+     * Appends faces to the journal file, and tells the statistics about it like the journal writer would.
+     */
+    private void append(int sides, int[] faces, boolean notify) throws IOException {
+        int width = JournalFile.faceWidth(sides);
+        ByteBuffer buffer = ByteBuffer.allocate(faces.length * width);
+        for (int face : faces) {
+            JournalFile.putFace(buffer, width, face);
+        }
+        Path path = JournalFile.path(directory, sides);
+        long position = Files.size(path);
+        Files.write(path, buffer.array(), StandardOpenOption.APPEND);
+        if (notify) {
+            buffer.flip();
+            statistics.rollsWritten(sides, buffer, position);
+        }
+    }
+
+    private static int[] faces(int sides, int count, long seed) {
+        Random random = new Random(seed);
+        int[] faces = new int[count];
+        for (int i = 0; i < count; i++) {
+            faces[i] = random.nextInt(sides);
+        }
+        return faces;
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        int[] joined = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, joined, a.length, b.length);
+        return joined;
+    }
+}
@@ -0,0 +1,127 @@
+package random;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RandomTest {
+
+    private static final int[] BOUNDS = {1, 2, 6, 7, 100, 1 << 30, (1 << 30) + 1, 3 << 29, Integer.MAX_VALUE};
+    private static final int SAMPLES = 20_000;
+
+    private static Random[] generators() {
+        return new Random[] {new XoroshiroRandom(), new SplittableRandomRandom(), new ThreadLocalRandomRandom()};
+    }
+
+    @Test
+    public void nextIntStaysInRange() {
+        for (Random random : generators()) {
+            for (int bound : BOUNDS) {
+                for (int i = 0; i < SAMPLES; i++) {
+                    int value = random.nextInt(bound);
+                    assertTrue(name(random) + " nextInt(" + bound + ") = " + value, value >= 0 && value < bound);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void nextIntsStaysInRangeAndInsideTheSlice() {
+        for (Random random : generators()) {
+            for (int bound : BOUNDS) {
+                int[] values = new int[SAMPLES + 2];
+                values[0] = -1;
+                values[values.length - 1] = -1;
+                random.nextInts(bound, values, 1, SAMPLES);
+                assertEquals(-1, values[0]);
+                assertEquals(-1, values[values.length - 1]);
+                for (int i = 1; i <= SAMPLES; i++) {
+                    assertTrue(name(random) + " nextInts(" + bound + ") = " + values[i],
+                            values[i] >= 0 && values[i] < bound);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void boundOfOneIsAlwaysZero() {
+        for (Random random : generators()) {
+            int[] values = new int[100];
+            Arrays.fill(values, -1);
+            random.nextInts(1, values, 0, values.length);
+            assertArrayEquals(new int[100], values);
+            assertEquals(0, random.nextInt(1));
+        }
+    }
+
+    @Test
+    public void rejectsBoundsBelowOne() {
+        for (Random random : generators()) {
+            for (int bound : new int[] {0, -1, Integer.MIN_VALUE}) {
+                try {
+                    random.nextInt(bound);
+                    fail(name(random) + " took bound " + bound);
+                } catch (IllegalArgumentException expected) {
+                    // expected
+                }
+            }
+        }
+    }
+
+    @Test
+    public void spreadsEvenlyOverTheRange() {
+        for (Random random : generators()) {
+            for (int bound : new int[] {6, 3 << 29, Integer.MAX_VALUE}) {
+                // Three equal parts of the range, a biased reduction would favour the lower ones
+                long[] counts = new long[3];
+                int[] values = new int[SAMPLES];
+                random.nextInts(bound, values, 0, SAMPLES);
+                for (int value : values) {
+                    counts[(int) ((long) value * 3 / bound)]++;
+                }
+                for (long count : counts) {
+                    double expected = (double) SAMPLES / 3;
+                    double deviation = Math.sqrt(SAMPLES * (1.0 / 3) * (2.0 / 3));
+                    assertTrue(name(random) + " bound " + bound + " " + Arrays.toString(counts),
+                            Math.abs(count - expected) < 6 * deviation);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void seededGeneratorsRepeat() {
+        assertRepeats(new XoroshiroRandom(42), new XoroshiroRandom(42), new XoroshiroRandom(43));
+        assertRepeats(new SplittableRandomRandom(42), new SplittableRandomRandom(42), new SplittableRandomRandom(43));
+    }
+
+    private static void assertRepeats(Random random, Random same, Random other) {
+        for (int bound : BOUNDS) {
+            int[] values = new int[1000];
+            int[] repeated = new int[1000];
+            int[] different = new int[1000];
+            for (int i = 0; i < 500; i++) {
+                values[i] = random.nextInt(bound);
+                repeated[i] = same.nextInt(bound);
+                different[i] = other.nextInt(bound);
+            }
+            random.nextInts(bound, values, 500, 500);
+            same.nextInts(bound, repeated, 500, 500);
+            other.nextInts(bound, different, 500, 500);
+
+            assertArrayEquals(values, repeated);
+            if (bound > 1)
+                assertFalse(name(random) + " bound " + bound, Arrays.equals(values, different));
+        }
+    }
+
+    private static String name(Random random) {
+        return random.getClass().getSimpleName();
+    }
+}
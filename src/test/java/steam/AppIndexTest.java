@@ -0,0 +1,107 @@
+package steam;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AppIndexTest {
+
+    private static AppIndex index(String... names) {
+        AppCatalog.Builder builder = new AppCatalog.Builder();
+        for (int i = 0; i < names.length; i++) {
+            builder.add(i + 1, names[i]);
+        }
+        AppCatalog catalog = builder.build();
+        return AppIndex.build(catalog, entry -> !catalog.nameContains(entry, "trailer"));
+    }
+
+    @Test
+    public void findsSubstringsIgnoringCase() {
+        AppIndex index = index("Portal", "Portal 2", "Half-Life", "Super Portal Racer", "Team Fortress 2");
+        assertEquals(Arrays.asList("1", "2", "4"), index.search("portal"));
+        assertEquals(Arrays.asList("2", "5"), index.search(" 2"));
+        assertEquals(Collections.singletonList("3"), index.search("f-l"));
+    }
+
+    @Test
+    public void leavesOutUnsearchableApps() {
+        AppIndex index = index("Portal", "Portal Trailer");
+        assertEquals(Collections.singletonList("1"), index.search("portal"));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void findsNothingForUnknownTrigram() {
+        AppIndex index = index("Portal", "Portal 2");
+        assertTrue(index.search("portax").isEmpty());
+        assertTrue(index.search("zzz").isEmpty());
+    }
+
+    @Test
+    public void matchesScanOfAllNames() {
+        Random random = new Random(3);
+        String alphabet = "abcde ";
+        String[] names = new String[2000];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = randomText(random, alphabet, 1 + random.nextInt(20));
+        }
+        AppIndex index = index(names);
+
+        for (int i = 0; i < 500; i++) {
+            String query = randomText(random, alphabet, 1 + random.nextInt(6));
+            List<String> expected = new ArrayList<>();
+            for (int entry = 0; entry < names.length; entry++) {
+                if (names[entry].contains(query))
+                    expected.add(Integer.toString(entry + 1));
+            }
+            assertEquals(query, expected, index.search(query));
+        }
+    }
+
+    @Test
+    public void ranksExactPrefixAndShortNamesFirst() {
+        AppIndex index = index("The Witcher 3", "Witcher 2", "Witcher", "Witcher Adventure Game");
+        assertEquals(Arrays.asList("3", "2", "4", "1"), index.searchRanked("witcher", 10));
+        assertEquals(Arrays.asList("3", "2"), index.searchRanked("witcher", 2));
+    }
+
+    @Test
+    public void toleratesTyposByQueryLength() {
+        AppIndex index = index("Stardew Valley", "Terraria", "Factorio");
+
+        // Up to five characters must match exactly
+        assertTrue(index.searchRanked("tarr", 5).isEmpty());
+        // One edit from six characters on
+        assertEquals(Collections.singletonList("3"), index.searchRanked("factorjo", 5));
+        assertTrue(index.searchRanked("fectorjo", 5).isEmpty());
+        // Two edits from nine characters on
+        assertEquals(Collections.singletonList("1"), index.searchRanked("stardw valey", 5));
+    }
+
+    @Test
+    public void ranksFewerEditsFirst() {
+        AppIndex index = index("Factorial Game", "Factorio");
+        assertEquals(Arrays.asList("2", "1"), index.searchRanked("factorio", 5));
+    }
+
+    @Test
+    public void shortRankedQueriesScan() {
+        AppIndex index = index("Go Fish", "Portal", "Ego");
+        assertEquals(Arrays.asList("1", "3"), index.searchRanked("go", 5));
+    }
+
+    private static String randomText(Random random, String alphabet, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return text.toString();
+    }
+}
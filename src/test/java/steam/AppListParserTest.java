@@ -0,0 +1,37 @@
+package steam;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+
+public class AppListParserTest {
+
+    private static AppCatalog parse(String json) throws IOException {
+        return AppListParser.parse(new StringReader(json));
+    }
+
+    @Test
+    public void readsAppsInOrder() throws IOException {
+        AppCatalog catalog = parse("{\"applist\":{\"apps\":[{\"appid\":10,\"name\":\"Counter-Strike\"},"
+                + "{\"name\":\"Portal\",\"appid\":\"400\"}]}}");
+        assertEquals(2, catalog.size());
+        assertEquals(10, catalog.appId(0));
+        assertEquals("Counter-Strike", catalog.name(0));
+        assertEquals(400, catalog.appId(1));
+        assertEquals("Portal", catalog.name(1));
+    }
+
+    @Test
+    public void skipsIdsOutsideIntRange() throws IOException {
+        AppCatalog catalog = parse("{\"applist\":{\"apps\":[{\"appid\":2147483647,\"name\":\"Largest\"},"
+                + "{\"appid\":2147483648,\"name\":\"Too large\"},{\"appid\":\"9999999999\",\"name\":\"Ten digits\"},"
+                + "{\"appid\":123456789012345678901234,\"name\":\"Huge\"},{\"appid\":20,\"name\":\"Last\"}]}}");
+        assertEquals(2, catalog.size());
+        assertEquals(Integer.MAX_VALUE, catalog.appId(0));
+        assertEquals(20, catalog.appId(1));
+        assertEquals("Last", catalog.name(1));
+    }
+}